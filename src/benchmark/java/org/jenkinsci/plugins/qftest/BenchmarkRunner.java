@@ -0,0 +1,29 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this package from the <tt>jmh</tt> Maven profile.
+ *
+ * A subset can be selected with <tt>-Dbenchmark=&lt;regex&gt;</tt>, results are written to
+ * <tt>target/jmh-result.json</tt> for comparison between changes.
+ */
+class BenchmarkRunner {
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("benchmark", BenchmarkRunner.class.getPackage().getName() + "\\..*Benchmark"))
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .resultFormat(org.openjdk.jmh.results.format.ResultFormatType.JSON)
+                .result("target/jmh-result.json")
+                .shouldFailOnError(true)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,96 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of QF-Test command lines the way the build step does it, including the preset chain
+ * and custom parameters that hit the DEFAULT presets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CommandLineBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int suiteCount;
+
+    @Param({"0", "5"})
+    public int defaultsOverridden;
+
+    private List<String> suites;
+    private String customParam;
+    private PresetRules template;
+
+    @Setup
+    public void setUp() {
+        suites = new ArrayList<>();
+        for (int i = 0; i < suiteCount; i++) {
+            suites.add("tests/module" + (i % 50) + "/suite" + i + ".qft");
+        }
+
+        StringBuilder sb = new StringBuilder("-variable browser=firefox -variable env=staging -report.name 'nightly run'");
+        for (int i = 0; i < defaultsOverridden; i++) {
+            sb.append(" -default").append(i).append(" custom").append(i);
+        }
+        customParam = sb.toString();
+
+        template = PresetRules.EMPTY.with(Collections.singletonList("/opt/qftest/bin/qftest"))
+                .with(QFTestCommandLineBuilder.PresetType.ENFORCE, "-run")
+                .with(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch");
+        for (int i = 0; i < defaultsOverridden; i++) {
+            template = template.with(QFTestCommandLineBuilder.PresetType.DEFAULT, "-default" + i, "value" + i);
+        }
+        template = template.with(QFTestCommandLineBuilder.PresetType.DROP, "-report")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-report.html")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-report.junit")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-report.xml")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-gendoc")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-testdoc")
+                .with(QFTestCommandLineBuilder.PresetType.DROP, "-pkgdoc")
+                .with(QFTestCommandLineBuilder.PresetType.ENFORCE, "-nomessagewindow")
+                .with(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", "/ws/_qftestRunLogs/qrz/0000");
+    }
+
+    @Benchmark
+    public List<String> runCommandLine() {
+        QFTestCommandLineBuilder args = new QFTestCommandLineBuilder("/opt/qftest/bin/qftest", QFTestCommandLineBuilder.RunMode.RUN);
+        args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch");
+        for (int i = 0; i < defaultsOverridden; i++) {
+            args.presetArg(QFTestCommandLineBuilder.PresetType.DEFAULT, "-default" + i, "value" + i);
+        }
+        args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-run")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.html")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.junit")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.xml")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-gendoc")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-testdoc")
+                .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-pkgdoc")
+                .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-nomessagewindow")
+                .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", "/ws/_qftestRunLogs/qrz/0000");
+        args.addSuiteConfig(customParam, suites);
+        return args.toList();
+    }
+
+    @Benchmark
+    public List<String> resolveTemplate() {
+        return template.resolve(customParam, suites);
+    }
+
+    @Benchmark
+    public List<String> constructOnly() {
+        return new QFTestCommandLineBuilder("/opt/qftest/bin/qftest", QFTestCommandLineBuilder.RunMode.GENREPORT).toList();
+    }
+}
@@ -0,0 +1,93 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Util;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Expansion of suite names: the <tt>-suitesfile</tt> handling of the custom parameters,
+ * the recursive directory search with and without the discovery cache, and batching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SuiteExpansionBenchmark {
+
+    @Param({"1", "100", "1000", "10000"})
+    public int suiteCount;
+
+    private File workspace;
+    private File cacheDir;
+    private List<Suites> expanded;
+    private Suites withSuitesfile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        workspace = Files.createTempDirectory("qftest-bench").toFile();
+        cacheDir = Files.createTempDirectory("qftest-bench-cache").toFile();
+        expanded = new ArrayList<>();
+        for (int i = 0; i < suiteCount; i++) {
+            File dir = new File(workspace, "suites/module" + (i % 50) + "/area" + (i % 7));
+            dir.mkdirs();
+            File suite = new File(dir, "suite" + i + ".qft");
+            suite.createNewFile();
+            expanded.add(new Suites(suite.getPath(), (i % 3 == 0 ? "-variable browser=chrome" : "-variable browser=firefox")));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            sb.append(" -variable v").append(i).append("=value").append(i);
+        }
+        withSuitesfile = new Suites("", sb + " -suitesfile suites.txt -report.name 'nightly run'");
+
+        //fill the discovery cache
+        discoverCached();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException, InterruptedException {
+        Util.deleteRecursive(workspace);
+        Util.deleteRecursive(cacheDir);
+    }
+
+    @Benchmark
+    public Suites considerSuitesfile() {
+        return withSuitesfile.considerSuitesfile();
+    }
+
+    @Benchmark
+    public List<String> discoverUncached() throws IOException, InterruptedException {
+        return new Suites("suites", "").getExpandedPaths(new FilePath(workspace), null, false)
+                .map(FilePath::getRemote)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<String> discoverCached() throws IOException, InterruptedException {
+        return new Suites("suites", "").getExpandedPaths(new FilePath(workspace), new FilePath(cacheDir), false)
+                .map(FilePath::getRemote)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<SuiteBatch> batch() {
+        return SuiteBatch.group(expanded, 25);
+    }
+}
@@ -0,0 +1,146 @@
+package org.jenkinsci.plugins.qftest;
+
+import jenkins.security.MasterToSlaveCallable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Caps the number of QF-Test processes running concurrently, across all builds.
+ *
+ * Each agent admits at most {@link Limits#maxPerAgent} processes, and no more than fit into its physical memory
+ * at {@link Limits#memoryPerProcess} MB each. Independent of the agent, at most {@link Limits#licenseSeats}
+ * processes run at all. Calls exceeding a limit wait until a running one has finished, instead of failing.
+ * Only the processes admitted here are counted, so QF-Test daemons, which hold a license while idle,
+ * are not used together with a license limit.
+ */
+class AdmissionControl {
+
+    /** Interval in which waiting calls check whether they have been cancelled */
+    static final long CANCEL_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    /** The limits, 0 meaning unlimited */
+    static class Limits {
+        final int maxPerAgent;
+        final int memoryPerProcess;
+        final int licenseSeats;
+
+        Limits(int maxPerAgent, int memoryPerProcess, int licenseSeats) {
+            this.maxPerAgent = maxPerAgent;
+            this.memoryPerProcess = memoryPerProcess;
+            this.licenseSeats = licenseSeats;
+        }
+
+        boolean isUnlimited() {
+            return maxPerAgent <= 0 && memoryPerProcess <= 0 && licenseSeats <= 0;
+        }
+
+        /**
+         * @param agentMemory physical memory of the agent in MB, or a negative value if unknown
+         * @return the maximum number of processes on the agent, 0 for unlimited
+         */
+        int capacity(long agentMemory) {
+            int cap = Math.max(0, maxPerAgent);
+            if (memoryPerProcess > 0 && agentMemory > 0) {
+                final int byMemory = (int) Math.max(1, Math.min(Integer.MAX_VALUE, agentMemory / memoryPerProcess));
+                cap = (cap > 0 ? Math.min(cap, byMemory) : byMemory);
+            }
+            return cap;
+        }
+    }
+
+    /** An admitted process, to be closed once it has finished */
+    class Ticket implements AutoCloseable {
+        private final String agent;
+        private final long waited;
+        private boolean closed = false;
+
+        private Ticket(String agent, long waited) {
+            this.agent = agent;
+            this.waited = waited;
+        }
+
+        /** @return time in ms the call had to wait for admission */
+        long getWaited() {
+            return waited;
+        }
+
+        @Override
+        public void close() {
+            synchronized (AdmissionControl.this) {
+                if (!closed) {
+                    closed = true;
+                    running.merge(agent, -1, Integer::sum);
+                    licensesUsed--;
+                    AdmissionControl.this.notifyAll();
+                }
+            }
+        }
+    }
+
+    private static final AdmissionControl INSTANCE = new AdmissionControl();
+
+    private final Map<String, Integer> running = new HashMap<>();
+    private int licensesUsed = 0;
+
+    static AdmissionControl get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits until the limits allow another process on the agent.
+     *
+     * @param agent name of the agent, "" for the controller
+     * @param capacity maximum number of processes on the agent, see {@link Limits#capacity(long)}
+     * @param licenseSeats maximum number of processes overall, 0 for unlimited
+     */
+    synchronized Ticket admit(String agent, int capacity, int licenseSeats) throws InterruptedException {
+        return admit(agent, capacity, licenseSeats, () -> false);
+    }
+
+    /**
+     * Like {@link #admit(String, int, int)}, but gives up waiting once the call has been cancelled.
+     *
+     * @param cancelled checked at least every {@link #CANCEL_CHECK_INTERVAL} ms while waiting
+     * @throws CancellationException if the call has been cancelled while waiting
+     */
+    synchronized Ticket admit(String agent, int capacity, int licenseSeats, BooleanSupplier cancelled) throws InterruptedException {
+        final long started = System.currentTimeMillis();
+        while ((capacity > 0 && getRunning(agent) >= capacity) || (licenseSeats > 0 && licensesUsed >= licenseSeats)) {
+            if (cancelled.getAsBoolean()) {
+                throw new CancellationException();
+            }
+            wait(CANCEL_CHECK_INTERVAL);
+        }
+        running.merge(agent, 1, Integer::sum);
+        licensesUsed++;
+        return new Ticket(agent, System.currentTimeMillis() - started);
+    }
+
+    synchronized int getRunning(String agent) {
+        return running.getOrDefault(agent, 0);
+    }
+
+    synchronized int getLicensesUsed() {
+        return licensesUsed;
+    }
+
+    /** Determines the physical memory of an agent in MB, -1 if the JVM does not tell */
+    static class PhysicalMemory extends MasterToSlaveCallable<Long, RuntimeException> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Long call() {
+            OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                return ((com.sun.management.OperatingSystemMXBean) os).getTotalPhysicalMemorySize() / (1024 * 1024);
+            }
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.qftest;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The QF-Test calls made for a batch: the first one and its retries, run one after the other.
+ */
+class BatchAttempts {
+
+    private final List<String> ids = new ArrayList<>();
+
+    @CheckForNull
+    private Integer first;
+
+    @CheckForNull
+    private Integer best;
+
+    private boolean stopped = false;
+
+    private boolean replayed = false;
+
+    void started(String attemptId) {
+        ids.add(attemptId);
+    }
+
+    void finished(int ret) {
+        first = (first != null ? first : ret);
+        best = (best != null ? ReducedReturnValue.best(best, ret) : ret);
+    }
+
+    /** No further attempts are made */
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /** The outcome has been taken from the {@link ResultCache} instead of running QF-Test */
+    void replayed() {
+        replayed = true;
+    }
+
+    boolean isReplayed() {
+        return replayed;
+    }
+
+    /** @return the ids of the attempts started, each has a run log directory of that name */
+    List<String> getIds() {
+        return ids;
+    }
+
+    /** @return the return value of the first attempt, null if none has finished */
+    @CheckForNull
+    Integer getFirst() {
+        return first;
+    }
+
+    /** @return the best return value of all attempts, null if none has finished */
+    @CheckForNull
+    Integer getBest() {
+        return best;
+    }
+}
@@ -0,0 +1,56 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.model.TaskListener;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * What a QF-Test call holds while its process is running: the admission ticket, the daemon and the virtual display.
+ * Acquired before the launch and released once the process has finished, on whatever thread that is noticed.
+ */
+class CallResources {
+
+    @CheckForNull
+    private final QFTestDaemonPool daemonPool;
+    @CheckForNull
+    private final VirtualDisplayPool displays;
+
+    @CheckForNull
+    AdmissionControl.Ticket ticket;
+    @CheckForNull
+    QFTestDaemonPool.Lease lease;
+    @CheckForNull
+    VirtualDisplayPool.Display display;
+
+    CallResources(@CheckForNull QFTestDaemonPool daemonPool, @CheckForNull VirtualDisplayPool displays) {
+        this.daemonPool = daemonPool;
+        this.displays = displays;
+    }
+
+    /**
+     * @param daemonReusable false, if the daemon is in an unknown state and has to be stopped
+     * @param displayReusable false, if the display may be in a bad state and has to be stopped
+     */
+    void release(boolean daemonReusable, boolean displayReusable, TaskListener listener) {
+        if (lease != null && daemonPool != null) {
+            try {
+                daemonPool.release(lease, daemonReusable);
+            } catch (Exception ex) {
+                listener.error("Unable to stop QF-Test daemon: " + ex.getMessage());
+            }
+            lease = null;
+        }
+        if (display != null && displays != null) {
+            try {
+                displays.release(display, displayReusable);
+            } catch (Exception ex) {
+                listener.error("Unable to stop virtual display " + display + ": " + ex.getMessage());
+            }
+            display = null;
+        }
+        if (ticket != null) {
+            ticket.close();
+            ticket = null;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Manifest of the QF-Test calls a build step has completed, kept in its report directory, so that a step
+ * interrupted by an agent disconnect or a controller restart can be resumed without running them again.
+ *
+ * Its header records the build number and a fingerprint of the suites of the step. A manifest not marked as finished is
+ * resumed by another attempt within the same build, e.g. a pipeline <tt>retry</tt>, or by the next build of the job if the
+ * build that wrote it has failed or been aborted, e.g. a freestyle build whose agent disconnected. The resuming build takes
+ * the manifest over. A step running other suites starts afresh.
+ *
+ * Format, one line per suite, appended as the calls complete: return value TAB run id TAB attempt ids separated by ','
+ * TAB suite TAB custom parameter. A step that has run to its end appends {@link #FINISHED}, its manifest is not resumed.
+ */
+class Checkpoint {
+
+    static final String FILENAME = "checkpoint.tsv";
+
+    private static final String HEADER = "# QF-Test checkpoint v2: return value, run id, attempt ids, suite, custom parameter";
+    private static final String BUILD = "# build ";
+    static final String FINISHED = "# finished";
+
+    /** A completed QF-Test call, with the run log directories of all its attempts below qrz */
+    static class Call {
+        final String runId;
+        final List<String> attemptIds;
+        final int returnValue;
+        final List<String> suites;
+
+        /**
+         * @param suites paths of the suites run by the call
+         * @param returnValue the return value the call contributes to the result of the step
+         */
+        Call(String runId, List<String> attemptIds, List<String> suites, int returnValue) {
+            this.runId = runId;
+            this.attemptIds = new ArrayList<>(attemptIds);
+            this.suites = new ArrayList<>(suites);
+            this.returnValue = returnValue;
+        }
+    }
+
+    private final FilePath file;
+    private final int build;
+    private final String fingerprint;
+
+    /** keyed on suite and custom parameter */
+    private final Map<String, Call> completed = new LinkedHashMap<>();
+
+    private Checkpoint(FilePath file, int build, String fingerprint) {
+        this.file = file;
+        this.build = build;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @param logdir the report directory of the step
+     * @param build number of the build running the step
+     * @param fingerprint fingerprint of the suites of the step, see {@link #fingerprint}
+     * @return an empty manifest, written with the first completed call
+     */
+    static Checkpoint create(FilePath logdir, int build, String fingerprint) {
+        return new Checkpoint(logdir.child(FILENAME), build, fingerprint);
+    }
+
+    /**
+     * @return a fingerprint of the suites and custom parameters, independent of their order
+     */
+    static String fingerprint(List<Suites> suites) {
+        final Set<String> keys = new TreeSet<>();
+        suites.forEach(sf -> keys.add(key(sf.getSuitename(), sf.getCustomParam())));
+        return Util.getDigestOf(String.join("\n", keys));
+    }
+
+    /**
+     * @param logdir the report directory of an earlier attempt of the step
+     * @param build number of the build running the step
+     * @param failedBuild number of the previous build of the job if it has failed or been aborted, otherwise -1
+     * @return the manifest of the earlier attempt, now owned by the given build, or null if there is none, it was
+     * written by another build or the attempt has run to its end
+     */
+    @CheckForNull
+    static Checkpoint resume(FilePath logdir, int build, int failedBuild) throws IOException, InterruptedException {
+        final FilePath file = logdir.child(FILENAME);
+        if (!file.exists()) {
+            return null;
+        }
+        final String content = file.readToString();
+        final List<String> lines = new ArrayList<>(Arrays.asList(content.split("\n")));
+        if (!content.endsWith("\n")) {
+            //the append of the last line got interrupted
+            lines.remove(lines.size() - 1);
+        }
+        if (lines.size() < 2 || !lines.get(0).equals(HEADER) || !lines.get(1).startsWith(BUILD) || lines.contains(FINISHED)) {
+            return null;
+        }
+        final String[] id = lines.get(1).substring(BUILD.length()).split(" ", 2);
+        if (id.length != 2) {
+            return null;
+        }
+        if (!id[0].equals(Integer.toString(build))) {
+            if (failedBuild < 0 || !id[0].equals(Integer.toString(failedBuild))) {
+                return null;
+            }
+            //taken over, so an interruption of this build is resumed by the next one again
+            lines.set(1, BUILD + build + " " + id[1]);
+            file.write(String.join("\n", lines) + "\n", "UTF-8");
+        }
+        final Checkpoint ret = new Checkpoint(file, build, id[1]);
+        final Map<String, Call> calls = new TreeMap<>();
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] cols = line.split("\t", 5);
+            if (cols.length != 5) continue;
+            try {
+                final Call call = calls.computeIfAbsent(cols[1], runId -> new Call(
+                        runId, Arrays.asList(cols[2].split(",")), Collections.emptyList(), Integer.parseInt(cols[0])
+                ));
+                call.suites.add(cols[3]);
+                ret.completed.put(key(cols[3], cols[4]), call);
+            } catch (NumberFormatException ex) {
+                //skip corrupt line, the suite is run again
+            }
+        }
+        return ret;
+    }
+
+    private static String key(String suite, String customParam) {
+        return suite + "\t" + customParam;
+    }
+
+    /**
+     * @return whether the manifest was written for the given suites, see {@link #fingerprint}
+     */
+    boolean isFor(String fingerprint) {
+        return this.fingerprint.equals(fingerprint);
+    }
+
+    synchronized boolean isCompleted(Suites sf) {
+        return completed.containsKey(key(sf.getSuitename(), sf.getCustomParam()));
+    }
+
+    /**
+     * @return the completed calls of the given suites, ordered by run id
+     */
+    synchronized List<Call> getCalls(List<Suites> suites) {
+        final Map<String, Call> ret = new TreeMap<>();
+        for (Suites sf : suites) {
+            final Call call = completed.get(key(sf.getSuitename(), sf.getCustomParam()));
+            if (call != null) {
+                ret.put(call.runId, call);
+            }
+        }
+        return new ArrayList<>(ret.values());
+    }
+
+    /**
+     * @return the first index not used by the run ids of completed calls, so later calls do not overwrite their run logs
+     */
+    synchronized int nextRunIndex() {
+        int ret = 0;
+        for (Call call : completed.values()) {
+            try {
+                ret = Math.max(ret, Integer.parseInt(call.runId) + 1);
+            } catch (NumberFormatException ex) {
+                //not a numbered run id
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the names of the run log directories of the completed calls
+     */
+    synchronized Set<String> getAttemptIds() {
+        final Set<String> ret = new HashSet<>();
+        completed.values().forEach(call -> ret.addAll(call.attemptIds));
+        return ret;
+    }
+
+    /**
+     * @return the run ids of the completed calls
+     */
+    synchronized Set<String> getRunIds() {
+        final Set<String> ret = new HashSet<>();
+        completed.values().forEach(call -> ret.add(call.runId));
+        return ret;
+    }
+
+    synchronized int size() {
+        return completed.size();
+    }
+
+    /**
+     * Records a completed QF-Test call and appends its suites to the manifest.
+     *
+     * @param suites the suites run by the call
+     */
+    synchronized void record(Call call, List<Suites> suites) throws IOException, InterruptedException {
+        final StringBuilder sb = new StringBuilder();
+        for (Suites sf : suites) {
+            final String key = key(sf.getSuitename(), sf.getCustomParam());
+            completed.put(key, call);
+            sb.append(call.returnValue).append('\t')
+                    .append(call.runId).append('\t')
+                    .append(String.join(",", call.attemptIds)).append('\t')
+                    .append(key).append('\n');
+        }
+        file.act(new Append(header(), sb.toString()));
+    }
+
+    /**
+     * Marks the step as run to its end, so the next attempt starts afresh.
+     */
+    synchronized void finish() throws IOException, InterruptedException {
+        file.act(new Append(header(), FINISHED + "\n"));
+    }
+
+    private String header() {
+        return HEADER + "\n" + BUILD + build + " " + fingerprint + "\n";
+    }
+
+    /**
+     * Deletes the output of the calls not completed by the earlier attempt, which are run again.
+     *
+     * @param incrementalReports whether the reports of the completed calls are kept, otherwise the reports are created anew
+     */
+    void discardIncomplete(FilePath qrzdir, FilePath htmldir, FilePath junitdir, boolean incrementalReports) throws IOException, InterruptedException {
+        final Set<String> attemptIds = getAttemptIds();
+        for (FilePath fp : qrzdir.listDirectories()) {
+            if (!attemptIds.contains(fp.getName())) {
+                fp.deleteRecursive();
+            }
+        }
+        if (incrementalReports) {
+            final Set<String> runIds = getRunIds();
+            for (FilePath dir : new FilePath[]{htmldir, junitdir}) {
+                for (FilePath fp : dir.list()) {
+                    if (!runIds.contains(fp.getName())) {
+                        fp.deleteRecursive();
+                    }
+                }
+            }
+        } else {
+            htmldir.deleteContents();
+            junitdir.deleteContents();
+        }
+    }
+
+    /** Appends to the manifest on the agent, starting it with the header if it does not exist yet */
+    static class Append extends MasterToSlaveFileCallable<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final String header;
+        private final String lines;
+
+        Append(String header, String lines) {
+            this.header = header;
+            this.lines = lines;
+        }
+
+        @Override
+        public Void invoke(File f, VirtualChannel channel) throws IOException {
+            final String content = (f.exists() ? lines : header + lines);
+            Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            return null;
+        }
+    }
+}
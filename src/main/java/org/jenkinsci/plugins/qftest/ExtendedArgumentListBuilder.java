@@ -2,16 +2,18 @@ package org.jenkinsci.plugins.qftest;
 
 import hudson.util.ArgumentListBuilder;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Mutable command line honoring preset rules, for single use.
+ * The rules are applied by {@link PresetRules}, use its immutable templates for command lines launched repeatedly.
+ */
 public class ExtendedArgumentListBuilder extends ArgumentListBuilder {
 
-    boolean skipValue = false;
-    private Map<String, String> overwrites = new HashMap();
-    private Map<String, String> defaults = new HashMap();
-    private Map<String, String> drops = new HashMap();
+    /** Whether the argument at the same index of {@link #toList()} is masked, kept here as the rules may remove arguments */
+    private final List<Boolean> masks = new ArrayList<>();
+    private final PresetRules.Resolution resolution = new PresetRules.Resolution(PresetRules.EMPTY, super.toList(), masks, false);
 
 
     public enum PresetType {
@@ -22,24 +24,7 @@ public class ExtendedArgumentListBuilder extends ArgumentListBuilder {
     }
 
     public ExtendedArgumentListBuilder presetArg(PresetType type, String key, String value) {
-        switch(type) {
-            case DROP:      //drop this key and if value != null drop also the value
-                drops.put(key, value); break;
-            case DEFAULT:   //set a default value
-                super.add(key, false);
-                if (value != null) {
-                    super.add(value, false);
-                }
-                defaults.put(key, value); break;
-            case OVERWRITE: //overwrite the value belonging the key
-                overwrites.put(key, value); break;
-            case ENFORCE:   //always set exactly these values
-                add(key, false);
-                if (value != null) {
-                    add(value, false);
-                }
-                drops.put(key, value); break;
-        }
+        resolution.preset(type, key, value);
         return this;
     }
 
@@ -51,39 +36,46 @@ public class ExtendedArgumentListBuilder extends ArgumentListBuilder {
         return presetArg(type, key, null);
     }
 
+    @Override
     public ExtendedArgumentListBuilder add(String arg, boolean mask) {
+        if (arg != null) {
+            resolution.accept(arg, mask);
+        }
+        return this;
+    }
 
-        if (skipValue) {
-            skipValue = false;
-
-        } else if (drops.containsKey(arg)) {
-            //drop key (and value?)
-            if (drops.get(arg) != null) {
-                skipValue = true;
-            }
-
-        } else if (overwrites.containsKey(arg)) {
-            //overwrite value
-            super.add(arg, mask);
-            super.add(overwrites.get(arg), mask);
-            skipValue = true;
-
-        } else if (defaults.containsKey(arg)) {
-            //already added..remove old values and take these
-            final List addedArgs = this.toList();
-            final int idx = addedArgs.indexOf(arg);
-
-            addedArgs.remove(idx);
-            super.add(arg, mask);
-
-           if (defaults.get(arg) != null) {
-               addedArgs.remove(idx);
-           }
+    @Override
+    public boolean[] toMaskArray() {
+        final boolean[] ret = new boolean[masks.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = masks.get(i);
+        }
+        return ret;
+    }
 
-        } else {
-            super.add(arg, mask);
+    @Override
+    public boolean hasMaskedArguments() {
+        return masks.contains(true);
+    }
 
+    /**
+     * Like {@link ArgumentListBuilder#toString()}, with masked arguments replaced by asterisks.
+     */
+    @Override
+    public String toString() {
+        final List<String> args = toList();
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < args.size(); i++) {
+            final String arg = (masks.get(i) ? "******" : args.get(i));
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            if (arg.indexOf(' ') >= 0 || arg.isEmpty()) {
+                buf.append('"').append(arg).append('"');
+            } else {
+                buf.append(arg);
+            }
         }
-        return this;
+        return buf.toString();
     }
 }
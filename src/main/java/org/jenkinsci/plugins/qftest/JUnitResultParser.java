@@ -0,0 +1,154 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for the JUnit reports created by QF-Test.
+ *
+ * Test cases are never held in memory: each one is written as a line to a case file right away,
+ * only the per suite totals are kept. Memory use therefore does not depend on the number of test cases.
+ */
+class JUnitResultParser {
+
+    /** Longer failure messages are truncated in the case file */
+    static final int MAX_MESSAGE_LENGTH = 500;
+
+    private final Map<String, QFTestResultAction.SuiteResult> suites = new LinkedHashMap<>();
+    private final Writer cases;
+
+    /**
+     * @param cases receives one line per test case, see {@link QFTestResultAction.CaseResult#parse(String)}
+     */
+    JUnitResultParser(Writer cases) {
+        this.cases = cases;
+    }
+
+    List<QFTestResultAction.SuiteResult> getSuites() {
+        return new ArrayList<>(suites.values());
+    }
+
+    void parse(InputStream in) throws IOException {
+        try {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                //names of the enclosing suites, innermost first
+                final Deque<String> outer = new ArrayDeque<>();
+                String suite = "";
+                QFTestResultAction.CaseResult current = null;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        switch (reader.getLocalName()) {
+                            case "testsuite":
+                                outer.push(suite);
+                                suite = Util.fixNull(reader.getAttributeValue(null, "name"));
+                                break;
+                            case "testcase":
+                                current = new QFTestResultAction.CaseResult(
+                                        suite,
+                                        Util.fixNull(reader.getAttributeValue(null, "name")),
+                                        QFTestResultAction.Status.PASSED,
+                                        seconds(reader.getAttributeValue(null, "time")),
+                                        ""
+                                );
+                                break;
+                            case "failure":
+                            case "error":
+                            case "skipped":
+                                if (current != null) {
+                                    current = current.withStatus(
+                                            QFTestResultAction.Status.fromElement(reader.getLocalName()),
+                                            message(reader.getAttributeValue(null, "message"))
+                                    );
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("testsuite") && !outer.isEmpty()) {
+                        suite = outer.pop();
+                    } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("testcase") && current != null) {
+                        suites.computeIfAbsent(current.getSuite(), QFTestResultAction.SuiteResult::new).add(current);
+                        cases.write(current.format());
+                        cases.write('\n');
+                        current = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Unable to parse JUnit report: " + ex.getMessage(), ex);
+        }
+    }
+
+    /** @return duration in ms of a JUnit time attribute given in seconds */
+    static long seconds(String time) {
+        if (time == null || time.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.round(Double.parseDouble(time.replace(',', '.')) * 1000);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+
+    private static String message(String message) {
+        String ret = Util.fixNull(message);
+        return (ret.length() > MAX_MESSAGE_LENGTH ? ret.substring(0, MAX_MESSAGE_LENGTH) + "..." : ret);
+    }
+
+    /**
+     * Parses all JUnit reports below a directory on the agent and writes the case file next to them.
+     */
+    static class Scan extends MasterToSlaveFileCallable<ArrayList<QFTestResultAction.SuiteResult>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String casesFile;
+
+        /**
+         * @param casesFile name of the case file to create in the scanned directory
+         */
+        Scan(String casesFile) {
+            this.casesFile = casesFile;
+        }
+
+        @Override
+        public ArrayList<QFTestResultAction.SuiteResult> invoke(File junitdir, VirtualChannel channel) throws IOException {
+            try (Writer w = Files.newBufferedWriter(new File(junitdir, casesFile).toPath(), StandardCharsets.UTF_8)) {
+                JUnitResultParser parser = new JUnitResultParser(w);
+                for (String report : Util.createFileSet(junitdir, "**/*.xml").getDirectoryScanner().getIncludedFiles()) {
+                    try (InputStream in = new BufferedInputStream(Files.newInputStream(new File(junitdir, report).toPath()))) {
+                        parser.parse(in);
+                    }
+                }
+                return new ArrayList<>(parser.getSuites());
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Util;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The command lines of the QF-Test calls of a build step, compiled once per build from the job configuration.
+ *
+ * A launch only binds its run log directory, the daemon port if any, and the suites.
+ * Custom parameters are tokenized once per distinct value.
+ */
+final class LaunchTemplate {
+
+    private final PresetRules run;
+    private final PresetRules callDaemon;
+    private final PresetRules genReport;
+    private final Map<String, List<String>> tokenized = new ConcurrentHashMap<>();
+
+    LaunchTemplate(String binary) {
+        this.run = runPresets(base(binary, QFTestCommandLineBuilder.RunMode.RUN));
+        this.callDaemon = runPresets(base(binary, QFTestCommandLineBuilder.RunMode.CALLDAEMON)
+                .with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-daemonhost", "localhost"));
+        this.genReport = base(binary, QFTestCommandLineBuilder.RunMode.GENREPORT);
+    }
+
+    /** Same arguments as a new {@link QFTestCommandLineBuilder} with enforced <tt>-batch</tt> */
+    private static PresetRules base(String binary, QFTestCommandLineBuilder.RunMode aMode) {
+        PresetRules ret = PresetRules.EMPTY.with(Collections.singletonList(binary));
+        for (QFTestCommandLineBuilder.RunMode mode : QFTestCommandLineBuilder.RunMode.values()) {
+            ret = ret.with(mode == aMode ? ExtendedArgumentListBuilder.PresetType.ENFORCE : ExtendedArgumentListBuilder.PresetType.DROP, mode.toString());
+        }
+        return ret.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-batch");
+    }
+
+    private static PresetRules runPresets(PresetRules base) {
+        PresetRules ret = base.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-run");
+        for (String arg : Arrays.asList("-report", "-report.html", "-report.junit", "-report.xml", "-gendoc", "-testdoc", "-pkgdoc")) {
+            ret = ret.with(ExtendedArgumentListBuilder.PresetType.DROP, arg);
+        }
+        return ret.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-nomessagewindow");
+    }
+
+    /**
+     * @param daemonPort port of the daemon to run the suites on, or null to run them in a QF-Test process of their own
+     * @param suites the suites, or a <tt>-suitesfile</tt> argument
+     */
+    List<String> run(String runlogdir, @CheckForNull Integer daemonPort, String customParam, List<String> suites) {
+        PresetRules bound = (daemonPort != null
+                ? callDaemon.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-daemonport", daemonPort.toString())
+                : run);
+        return bound.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-runlogdir", runlogdir)
+                .resolve(tokens(customParam, suites));
+    }
+
+    /**
+     * @param reportArgs the report options, passed as custom parameters
+     */
+    List<String> genReport(String runlogdir, List<String> reportArgs, List<String> runlogs) {
+        return genReport.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-runlogdir", runlogdir)
+                .resolve(concat(reportArgs, runlogs));
+    }
+
+    private List<String> tokens(String customParam, List<String> suites) {
+        return concat(tokenized.computeIfAbsent(Util.fixNull(customParam), p -> Arrays.asList(Util.tokenize(p))), suites);
+    }
+
+    private static List<String> concat(List<String> first, List<String> second) {
+        List<String> ret = new ArrayList<>(first.size() + second.size());
+        ret.addAll(first);
+        ret.addAll(second);
+        return ret;
+    }
+}
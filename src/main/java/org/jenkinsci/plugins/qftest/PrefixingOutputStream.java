@@ -0,0 +1,60 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.console.LineTransformationOutputStream;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * Prefixes every line written to the underlying stream, so the output of
+ * concurrently running QF-Test processes stays attributable in the console log.
+ * The underlying stream is shared and therefore never closed by this class.
+ * Optionally, every line is passed on to an observer as well, e.g. to track the progress of the process.
+ */
+class PrefixingOutputStream extends LineTransformationOutputStream {
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final byte[] prefix;
+    @CheckForNull
+    private final Consumer<String> lines;
+
+    /**
+     * @param charset charset of the underlying stream, i.e. of the console log
+     */
+    PrefixingOutputStream(OutputStream out, String prefix, Charset charset) {
+        this(out, prefix, charset, null);
+    }
+
+    PrefixingOutputStream(OutputStream out, String prefix, Charset charset, @CheckForNull Consumer<String> lines) {
+        this.out = out;
+        this.charset = charset;
+        this.prefix = prefix.getBytes(charset);
+        this.lines = lines;
+    }
+
+    @Override
+    protected void eol(byte[] b, int len) throws IOException {
+        synchronized (out) {
+            out.write(prefix);
+            out.write(b, 0, len);
+        }
+        if (lines != null) {
+            lines.accept(trimEOL(new String(b, 0, len, charset)));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        out.flush();
+    }
+}
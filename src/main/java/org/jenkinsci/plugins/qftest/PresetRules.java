@@ -0,0 +1,277 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Util;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable template of a command line: the preset rules together with the arguments emitted so far,
+ * i.e. the binary and the enforced and default arguments.
+ *
+ * Adding a rule or an argument returns a new template and leaves this one untouched, so a template
+ * can be shared by any number of concurrent launches. {@link #resolve(Iterable)} applies the rules to
+ * the tokens of a single launch in one pass with constant work per token.
+ *
+ * The rules only affect arguments added after them, like with {@link ExtendedArgumentListBuilder}.
+ */
+public final class PresetRules {
+
+    public static final PresetRules EMPTY = new PresetRules(
+            Collections.emptyList(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap()
+    );
+
+    private final List<String> args;
+    private final Map<String, String> drops;
+    private final Map<String, String> overwrites;
+    private final Map<String, String> defaults;
+    /** Index of the current occurrence of each default key within args */
+    private final Map<String, Integer> positions;
+
+    private PresetRules(List<String> args, Map<String, String> drops, Map<String, String> overwrites,
+                        Map<String, String> defaults, Map<String, Integer> positions) {
+        this.args = args;
+        this.drops = drops;
+        this.overwrites = overwrites;
+        this.defaults = defaults;
+        this.positions = positions;
+    }
+
+    /**
+     * @return a template with an additional preset rule, see {@link ExtendedArgumentListBuilder.PresetType}
+     */
+    public PresetRules with(ExtendedArgumentListBuilder.PresetType type, String key, @CheckForNull String value) {
+        Resolution r = new Resolution(this, new ArrayList<>(args), false);
+        r.preset(type, key, value);
+        return r.snapshot();
+    }
+
+    public PresetRules with(ExtendedArgumentListBuilder.PresetType type, String key) throws IllegalArgumentException {
+        if (type == ExtendedArgumentListBuilder.PresetType.DEFAULT || type == ExtendedArgumentListBuilder.PresetType.OVERWRITE) {
+            throw new IllegalArgumentException("This preset type requires an value argument.");
+        }
+        return with(type, key, null);
+    }
+
+    /**
+     * @return a template with additional arguments, which are subject to the rules of this template
+     */
+    public PresetRules with(Iterable<String> tokens) {
+        Resolution r = new Resolution(this, new ArrayList<>(args), false);
+        tokens.forEach(r::accept);
+        return r.snapshot();
+    }
+
+    /**
+     * @return the arguments of this template, without any tokens of a launch
+     */
+    public List<String> getArgs() {
+        return Collections.unmodifiableList(args);
+    }
+
+    /**
+     * Applies the rules to the tokens of a launch.
+     * Runs in time linear to the number of arguments and does not modify this template.
+     *
+     * @return the complete command line
+     */
+    public List<String> resolve(Iterable<String> tokens) {
+        Resolution r = new Resolution(this, new ArrayList<>(args), true);
+        tokens.forEach(r::accept);
+        return r.result();
+    }
+
+    /**
+     * Like {@link #resolve(Iterable)} for custom parameters given as a single string,
+     * followed by further arguments like the suites.
+     */
+    public List<String> resolve(String customParam, List<String> suites) {
+        List<String> tokens = new ArrayList<>();
+        Collections.addAll(tokens, Util.tokenize(Util.fixNull(customParam)));
+        tokens.addAll(suites);
+        return resolve(tokens);
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", args);
+    }
+
+    /**
+     * The state of applying the rules to a stream of tokens.
+     *
+     * The maps are shared with the template and only copied when a rule is added.
+     * Arguments of overridden defaults are either removed right away, or replaced by
+     * <tt>null</tt> and removed once in {@link #result()}, which keeps the pass linear.
+     */
+    static final class Resolution {
+        private final List<String> out;
+        /** Whether the argument at the same index in out is masked, or null if masks are not tracked */
+        @CheckForNull
+        private final List<Boolean> masks;
+        private final boolean deferRemoval;
+
+        private Map<String, String> drops;
+        private Map<String, String> overwrites;
+        private Map<String, String> defaults;
+        private Map<String, Integer> positions;
+        private boolean ownMaps = false;
+        private boolean ownPositions = false;
+        private boolean removed = false;
+        private boolean skipValue = false;
+
+        /**
+         * @param out the arguments of the template, receives the resolved arguments
+         * @param deferRemoval whether to replace removed arguments by <tt>null</tt> until {@link #result()}
+         */
+        Resolution(PresetRules template, List<String> out, boolean deferRemoval) {
+            this(template, out, null, deferRemoval);
+        }
+
+        /**
+         * @param masks whether the arguments of the template are masked, receives the masks of the resolved arguments
+         */
+        Resolution(PresetRules template, List<String> out, @CheckForNull List<Boolean> masks, boolean deferRemoval) {
+            this.out = out;
+            this.masks = masks;
+            this.deferRemoval = deferRemoval;
+            this.drops = template.drops;
+            this.overwrites = template.overwrites;
+            this.defaults = template.defaults;
+            this.positions = template.positions;
+        }
+
+        void accept(String arg) {
+            accept(arg, false);
+        }
+
+        /**
+         * @param mask whether the argument must not be shown in logs, also applies to the value set by an overwrite rule
+         */
+        void accept(String arg, boolean mask) {
+            if (skipValue) {
+                skipValue = false;
+
+            } else if (drops.containsKey(arg)) {
+                //drop key (and value?)
+                skipValue = (drops.get(arg) != null);
+
+            } else if (overwrites.containsKey(arg)) {
+                //overwrite value
+                emit(arg, mask);
+                emit(overwrites.get(arg), mask);
+                skipValue = true;
+
+            } else if (defaults.containsKey(arg)) {
+                //replace the previous occurrence, the value follows as next token
+                removeOccurrence(arg);
+                positions().put(arg, out.size());
+                emit(arg, mask);
+
+            } else {
+                emit(arg, mask);
+            }
+        }
+
+        private void emit(String arg, boolean mask) {
+            out.add(arg);
+            if (masks != null) {
+                masks.add(mask);
+            }
+        }
+
+        void preset(ExtendedArgumentListBuilder.PresetType type, String key, @CheckForNull String value) {
+            if (!ownMaps) {
+                drops = new HashMap<>(drops);
+                overwrites = new HashMap<>(overwrites);
+                defaults = new HashMap<>(defaults);
+                ownMaps = true;
+            }
+            skipValue = false;
+            switch (type) {
+                case DROP:      //drop this key and if value != null drop also the value
+                    drops.put(key, value);
+                    break;
+                case DEFAULT:   //set a default value
+                    removeOccurrence(key);
+                    positions().put(key, out.size());
+                    emit(key, false);
+                    if (value != null) {
+                        emit(value, false);
+                    }
+                    defaults.put(key, value);
+                    break;
+                case OVERWRITE: //overwrite the value belonging the key
+                    overwrites.put(key, value);
+                    break;
+                case ENFORCE:   //always set exactly these values
+                    accept(key);
+                    if (value != null) {
+                        accept(value);
+                    }
+                    skipValue = false;
+                    drops.put(key, value);
+                    break;
+            }
+        }
+
+        private Map<String, Integer> positions() {
+            if (!ownPositions) {
+                positions = new HashMap<>(positions);
+                ownPositions = true;
+            }
+            return positions;
+        }
+
+        private void removeOccurrence(String key) {
+            final Integer idx = positions.get(key);
+            if (idx == null) {
+                return;
+            }
+            final int count = (defaults.get(key) != null && idx + 1 < out.size() ? 2 : 1);
+            if (deferRemoval) {
+                for (int i = 0; i < count; i++) {
+                    out.set(idx + i, null);
+                }
+                removed = true;
+            } else {
+                for (int i = 0; i < count; i++) {
+                    out.remove(idx.intValue());
+                    if (masks != null) {
+                        masks.remove(idx.intValue());
+                    }
+                }
+                //few defaults only, shift the ones behind
+                positions().replaceAll((k, i) -> (i > idx ? i - count : i));
+            }
+            positions().remove(key);
+        }
+
+        List<String> result() {
+            if (removed && masks == null) {
+                out.removeIf(a -> a == null);
+            } else if (removed) {
+                int kept = 0;
+                for (int i = 0; i < out.size(); i++) {
+                    if (out.get(i) != null) {
+                        out.set(kept, out.get(i));
+                        masks.set(kept, masks.get(i));
+                        kept++;
+                    }
+                }
+                out.subList(kept, out.size()).clear();
+                masks.subList(kept, masks.size()).clear();
+            }
+            removed = false;
+            return out;
+        }
+
+        PresetRules snapshot() {
+            return new PresetRules(result(), drops, overwrites, defaults, positions);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for the QF-Test processes of all builds.
+ *
+ * Instead of a thread blocking in {@link Proc#join()} per running QF-Test call, the processes are polled
+ * every {@link ProcWatchdog#POLL_INTERVAL} ms, which also enforces their time limits. A single monitor thread only
+ * schedules the polls; each poll runs on a pooled poller thread, and a watch is not polled again before its previous
+ * poll has returned, so a slow or hung agent channel only delays the processes on that agent. The future of a
+ * {@link Watch} completes once its process has finished; continuations run on the poller thread of the watch.
+ */
+final class ProcMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcMonitor.class.getName());
+
+    /** Time a build waits for its killed processes to be noticed before it gives up on them */
+    static final long CANCEL_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private static final ProcMonitor INSTANCE = new ProcMonitor();
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService timer;
+    private ExecutorService pollers;
+
+    /** A process waited for by the monitor */
+    final class Watch {
+        private final Proc proc;
+        private final ProcWatchdog watchdog;
+        private final ProcWatchdog.ActivityOutputStream stdout;
+        private final FilePath runlogdir;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private final AtomicBoolean polling = new AtomicBoolean(false);
+
+        private Watch(Proc proc, ProcWatchdog watchdog, ProcWatchdog.ActivityOutputStream stdout, FilePath runlogdir) {
+            this.proc = proc;
+            this.watchdog = watchdog;
+            this.stdout = stdout;
+            this.runlogdir = runlogdir;
+        }
+
+        /**
+         * @return completes with the return value of the process, see {@link ProcWatchdog#poll}
+         */
+        CompletableFuture<Integer> getResult() {
+            return result;
+        }
+
+        /**
+         * Kills the process, the result completes with its return value on the next poll.
+         */
+        void kill() {
+            try {
+                proc.kill();
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Unable to kill QF-Test process", ex);
+            }
+        }
+
+        /** Runs a poll on a poller thread, unless the previous one is still running */
+        private void schedulePoll(ExecutorService pollers) {
+            if (!polling.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                pollers.execute(this::poll);
+            } catch (RejectedExecutionException ex) {
+                polling.set(false);
+                throw ex;
+            }
+        }
+
+        private void poll() {
+            try {
+                final Integer ret = watchdog.poll(proc, stdout, runlogdir);
+                if (ret != null) {
+                    watches.remove(this);
+                    result.complete(ret);
+                }
+            } catch (Exception ex) {
+                watches.remove(this);
+                result.completeExceptionally(ex);
+            } finally {
+                polling.set(false);
+            }
+        }
+    }
+
+    static ProcMonitor get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts waiting for a process.
+     *
+     * @param watchdog time limits of the process
+     * @param stdout stream the process writes its output to
+     * @param runlogdir run log directory of the process
+     */
+    Watch watch(Proc proc, ProcWatchdog watchdog, ProcWatchdog.ActivityOutputStream stdout, FilePath runlogdir) {
+        final Watch w = new Watch(proc, watchdog, stdout, runlogdir);
+        watches.add(w);
+        ensureStarted();
+        return w;
+    }
+
+    int size() {
+        return watches.size();
+    }
+
+    private synchronized void ensureStarted() {
+        if (timer == null) {
+            pollers = Executors.newCachedThreadPool(
+                    new NamingThreadFactory(new DaemonThreadFactory(), "QF-Test process poller")
+            );
+            timer = Executors.newSingleThreadScheduledExecutor(
+                    new NamingThreadFactory(new DaemonThreadFactory(), "QF-Test process monitor")
+            );
+            timer.scheduleWithFixedDelay(this::pollAll, ProcWatchdog.POLL_INTERVAL, ProcWatchdog.POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void pollAll() {
+        //an exception must not cancel the periodic task
+        try {
+            watches.forEach(w -> w.schedulePoll(pollers));
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to poll QF-Test processes", ex);
+        }
+    }
+}
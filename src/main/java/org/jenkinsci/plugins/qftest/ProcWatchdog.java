@@ -0,0 +1,194 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Proc;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Time limits of a QF-Test process, which is killed (including its child processes) once it exceeds one of them.
+ */
+class ProcWatchdog {
+
+    /** Return value the plugin records for a QF-Test call killed by the watchdog */
+    static final int RET_TIMEOUT = -124;
+
+    static final long POLL_INTERVAL = 1000;
+
+    /** Reason why a process has been killed */
+    enum Timeout {
+        SUITE("suite timeout exceeded"),
+        GLOBAL("global timeout exceeded"),
+        IDLE("no progress on stdout or in the run log directory");
+
+        private final String description;
+
+        Timeout(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    /**
+     * Records the time of the last write to the wrapped stream
+     */
+    static class ActivityOutputStream extends FilterOutputStream {
+
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        ActivityOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            lastActivity = System.currentTimeMillis();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            lastActivity = System.currentTimeMillis();
+            out.write(b, off, len);
+        }
+
+        /** The wrapped stream is owned by the caller */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        long getLastActivity() {
+            return lastActivity;
+        }
+    }
+
+    private final long suiteTimeout;
+    private final long globalDeadline;
+    private final long idleTimeout;
+    private final long started = System.currentTimeMillis();
+
+    @CheckForNull
+    private volatile Timeout timeout;
+
+    /**
+     * @param suiteTimeout maximum duration of the process in ms, 0 for unlimited
+     * @param globalDeadline point in time the process has to be finished at, 0 for unlimited
+     * @param idleTimeout maximum time in ms without progress, 0 for unlimited
+     */
+    ProcWatchdog(long suiteTimeout, long globalDeadline, long idleTimeout) {
+        this.suiteTimeout = suiteTimeout;
+        this.globalDeadline = globalDeadline;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Checks the process once, kills it if it has exceeded a time limit.
+     * Called in intervals of {@link #POLL_INTERVAL} by the {@link ProcMonitor}.
+     *
+     * @param proc the QF-Test process
+     * @param stdout stream the process writes its output to
+     * @param runlogdir run log directory of the process, whose modifications count as progress as well
+     * @return the return value of the process, {@link #RET_TIMEOUT} if it has been killed, or null if it is still running
+     */
+    @CheckForNull
+    Integer poll(Proc proc, ActivityOutputStream stdout, FilePath runlogdir) throws IOException, InterruptedException {
+        if (!proc.isAlive()) {
+            return proc.join();
+        }
+
+        final long now = System.currentTimeMillis();
+        if (suiteTimeout > 0 && now - started > suiteTimeout) {
+            timeout = Timeout.SUITE;
+        } else if (globalDeadline > 0 && now > globalDeadline) {
+            timeout = Timeout.GLOBAL;
+        } else if (idleTimeout > 0 && now - stdout.getLastActivity() > idleTimeout
+                && now - lastModified(runlogdir) > idleTimeout) {
+            timeout = Timeout.IDLE;
+        }
+
+        if (timeout != null) {
+            proc.kill();
+            return RET_TIMEOUT;
+        }
+        return null;
+    }
+
+    /**
+     * @return why the process has been killed or null if it finished on its own
+     */
+    @CheckForNull
+    Timeout getTimeout() {
+        return timeout;
+    }
+
+    private static long lastModified(FilePath dir) throws IOException, InterruptedException {
+        return dir.act(new LastModified());
+    }
+
+    /**
+     * Latest modification time of a directory and the files below it. QF-Test may only write to run logs in
+     * subdirectories, e.g. split run logs, so the directory is walked breadth first, limited in depth and number
+     * of files to bound the work per poll.
+     */
+    static class LastModified extends MasterToSlaveFileCallable<Long> {
+        private static final long serialVersionUID = 1L;
+
+        static final int MAX_DEPTH = 8;
+        static final int MAX_FILES = 10000;
+
+        private final int maxDepth;
+        private final int maxFiles;
+
+        LastModified() {
+            this(MAX_DEPTH, MAX_FILES);
+        }
+
+        /**
+         * @param maxDepth levels of subdirectories to descend into
+         * @param maxFiles number of files and directories to check at most
+         */
+        LastModified(int maxDepth, int maxFiles) {
+            this.maxDepth = maxDepth;
+            this.maxFiles = maxFiles;
+        }
+
+        @Override
+        public Long invoke(File dir, VirtualChannel channel) {
+            long ret = dir.lastModified();
+            int visited = 1;
+            Deque<File> level = new ArrayDeque<>();
+            level.add(dir);
+            for (int depth = 0; depth <= maxDepth && !level.isEmpty(); depth++) {
+                final Deque<File> next = new ArrayDeque<>();
+                for (File d : level) {
+                    final File[] files = d.listFiles();
+                    if (files == null) continue;
+                    for (File f : files) {
+                        if (visited++ >= maxFiles) {
+                            return ret;
+                        }
+                        ret = Math.max(ret, f.lastModified());
+                        if (depth < maxDepth && f.isDirectory()) {
+                            next.add(f);
+                        }
+                    }
+                }
+                level = next;
+            }
+            return ret;
+        }
+    }
+}
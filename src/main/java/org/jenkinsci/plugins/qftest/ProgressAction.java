@@ -0,0 +1,154 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Util;
+import hudson.model.Action;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Live progress of a QF-Test build step, shown on the build page while the suites are running.
+ *
+ * Suites are counted when the QF-Test call running them has finished. Test cases are counted
+ * from the console output of QF-Test, which reports the state of each finished test case
+ * when run with <tt>-verbose</tt>. Without such lines, the test case counters are not shown.
+ */
+public class ProgressAction implements Action {
+
+    /**
+     * A line reporting the state of a finished test case: the name of the test case, followed by its state
+     * after a colon or in brackets, so test cases named e.g. "Parse error" are not taken for a state
+     */
+    static final Pattern TEST_CASE_RESULT = Pattern.compile(
+            "(?i).*\\btest[- ]?case\\b.*\\S.*?[:(\\[]\\s*(passed|ok|failed|failure|error|exception)\\s*[)\\]]?\\.?\\s*");
+
+    private final int suitesTotal;
+    private final int workers;
+    private final long expectedTotal;
+    private final long started = System.currentTimeMillis();
+
+    private final AtomicInteger suitesDone = new AtomicInteger();
+    private final AtomicInteger passed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private volatile boolean finished = false;
+
+    /**
+     * @param suitesTotal number of suites to be run
+     * @param workers number of QF-Test calls running in parallel
+     * @param expectedTotal sum of the durations of the suites during previous builds in ms, 0 if unknown
+     */
+    ProgressAction(int suitesTotal, int workers, long expectedTotal) {
+        this.suitesTotal = suitesTotal;
+        this.workers = Math.max(1, workers);
+        this.expectedTotal = expectedTotal;
+    }
+
+    void suitesDone(int n) {
+        suitesDone.addAndGet(n);
+    }
+
+    void finish() {
+        finished = true;
+    }
+
+    /**
+     * Counts the test case reported by a line of QF-Test output, if any.
+     */
+    void line(String line) {
+        //cheap check first, most lines are not about test cases
+        if (line.length() < 8 || !(line.contains("est") || line.contains("EST"))) {
+            return;
+        }
+        final Matcher m = TEST_CASE_RESULT.matcher(line);
+        if (!m.matches()) {
+            return;
+        }
+        switch (m.group(1).toLowerCase()) {
+            case "passed":
+            case "ok":
+                passed.incrementAndGet();
+                break;
+            case "failed":
+            case "failure":
+                failed.incrementAndGet();
+                break;
+            default:
+                errors.incrementAndGet();
+                break;
+        }
+    }
+
+    public int getSuitesTotal() {
+        return suitesTotal;
+    }
+
+    public int getSuitesDone() {
+        return suitesDone.get();
+    }
+
+    public int getSuitesRemaining() {
+        return Math.max(0, suitesTotal - suitesDone.get());
+    }
+
+    public int getPassed() {
+        return passed.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return whether the output of QF-Test has reported any test case so far
+     */
+    public boolean isTestCasesSeen() {
+        return passed.get() + failed.get() + errors.get() > 0;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return estimated time in ms until all suites are done, or -1 if unknown.
+     * Based on the rate suites have been finished at so far, or on previous builds before the first suite is done.
+     */
+    long getEtaMillis(long now) {
+        final long elapsed = now - started;
+        final int done = suitesDone.get();
+        if (finished || getSuitesRemaining() == 0) {
+            return 0;
+        }
+        if (done == 0) {
+            return (expectedTotal > 0 ? Math.max(0, expectedTotal / workers - elapsed) : -1);
+        }
+        return elapsed * getSuitesRemaining() / done;
+    }
+
+    public String getEta() {
+        final long eta = getEtaMillis(System.currentTimeMillis());
+        return (eta < 0 ? "unknown" : Util.getTimeSpanString(eta));
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "QF-Test Progress";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+}
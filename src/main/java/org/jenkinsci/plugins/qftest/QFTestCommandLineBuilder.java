@@ -12,7 +12,9 @@ public class QFTestCommandLineBuilder extends ExtendedArgumentListBuilder {
     public static enum RunMode {
         RUN("-run"),
         GENREPORT("-genreport"),
-        GENDOC("-gendoc");
+        GENDOC("-gendoc"),
+        DAEMON("-daemon"),
+        CALLDAEMON("-calldaemon");
 
         private final String str;
 
@@ -51,4 +53,10 @@ public class QFTestCommandLineBuilder extends ExtendedArgumentListBuilder {
         this.add(suites);
         return suites.size();
     }
+
+    public int addSuiteConfig(String customParam, List<String> suites) {
+        this.addTokenized(customParam);
+        this.add(suites);
+        return suites.size();
+    }
 }
@@ -24,22 +24,18 @@
 package org.jenkinsci.plugins.qftest;
 
 import java.lang.String;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 
-import com.pivovarit.function.ThrowingFunction;
-import htmlpublisher.HtmlPublisherTarget;
 import hudson.*;
 import hudson.model.*;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
 
-import hudson.util.ArgumentListBuilder;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import net.sf.json.JSONObject;
@@ -50,13 +46,12 @@ import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
-import jenkins.util.BuildListenerAdapter;
 import javax.annotation.CheckForNull;
 import org.jenkinsci.Symbol;
 import javax.annotation.Nonnull;
 
-import htmlpublisher.HtmlPublisher;
 
 /**
  *
@@ -81,6 +76,7 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 	private transient boolean daemonSelected;
 	private transient String daemonhost;
 	private transient String daemonport;
+	private transient Character reducedQFTReturnValue;
 
 	private final ArrayList<Suites> suitefield;
 
@@ -91,7 +87,75 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 	private String customReports;
 
 	@CheckForNull
-	private Character reducedQFTReturnValue;
+	private Integer maxParallel;
+
+	@CheckForNull
+	private Integer suiteTimeout;
+
+	@CheckForNull
+	private Integer globalTimeout;
+
+	@CheckForNull
+	private Integer idleTimeout;
+
+	@CheckForNull
+	private Integer retries;
+
+	@CheckForNull
+	private Integer retryThreshold;
+
+	@CheckForNull
+	private Integer quarantineThreshold;
+
+	@CheckForNull
+	private AbortPolicy abortPolicy;
+
+	@CheckForNull
+	private ReportCleanup reportCleanup;
+
+	@CheckForNull
+	private Integer keepReports;
+
+	@CheckForNull
+	private Integer maxErrors;
+
+	private boolean forceRescan;
+
+	private boolean incrementalReports;
+
+	private boolean resume;
+
+	private boolean resultCache;
+
+	@CheckForNull
+	private String sutArtifacts;
+
+	private boolean publishTestResults;
+
+	@CheckForNull
+	private Integer suitesPerProcess;
+
+	private boolean affectedSuitesOnly;
+
+	@CheckForNull
+	private Integer fullRunEvery;
+
+	@CheckForNull
+	private String checkoutDirectory;
+
+	@CheckForNull
+	private Integer daemonPoolSize;
+
+	private boolean virtualDisplays;
+
+	@CheckForNull
+	private String virtualDisplayScreen;
+
+	@CheckForNull
+	private Integer shardIndex;
+
+	@CheckForNull
+	private Integer shardCount;
 
 	private Result onTestWarning;
 	private Result onTestError;
@@ -144,207 +208,403 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 	}
 
 
-	/** Called by XStream when deserializing object
+	@DataBoundSetter
+	public void setMaxParallel(int maxParallel) {
+		this.maxParallel = (maxParallel > DescriptorImpl.defaultMaxParallel ? maxParallel : null);
+	}
+
+	/**
+	 * @return maximum number of QF-Test processes this step runs concurrently
 	 */
-	protected Object readResolve() {
-	    this.setCustomPath(customPath);
-	    if (customReports!=null && customReports.isEmpty()) {
-	    	customReports = null;
-		}
+	public int getMaxParallel() {
+		return (maxParallel != null ? maxParallel : DescriptorImpl.defaultMaxParallel);
+	}
 
-	    return this;
+
+	@DataBoundSetter
+	public void setForceRescan(boolean forceRescan) {
+		this.forceRescan = forceRescan;
 	}
 
+	/**
+	 * @return true, if the cached state of previous suite searches shall be ignored
+	 */
+	public boolean isForceRescan() {
+		return forceRescan;
+	}
 
-	private char addToReducedReturnValue(char ret) {
-		if (	(reducedQFTReturnValue  == null) ||
-				(reducedQFTReturnValue <= 3 && ret > reducedQFTReturnValue) //only update to first non-negative return value
-		) {
-			reducedQFTReturnValue = ret;
-		}
-		return reducedQFTReturnValue.charValue();
+	@DataBoundSetter
+	public void setAffectedSuitesOnly(boolean affectedSuitesOnly) {
+		this.affectedSuitesOnly = affectedSuitesOnly;
 	}
 
-	@Override
-	public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+	/**
+	 * @return true, if only suites affected by the SCM changes of the build shall be run
+	 */
+	public boolean isAffectedSuitesOnly() {
+		return affectedSuitesOnly;
+	}
 
-		reducedQFTReturnValue = null;
+	@DataBoundSetter
+	public void setFullRunEvery(int fullRunEvery) {
+		this.fullRunEvery = (fullRunEvery > 0 ? fullRunEvery : null);
+	}
 
-		EnvVars env = run.getEnvironment(listener);
+	/**
+	 * @return every how many builds all suites are run regardless of the SCM changes, 0 for never
+	 */
+	public int getFullRunEvery() {
+		return (fullRunEvery != null ? fullRunEvery : 0);
+	}
 
-		FilePath logdir = workspace.child(getReportDirectory());
+	@DataBoundSetter
+	public void setCheckoutDirectory(String checkoutDirectory) {
+		this.checkoutDirectory = Util.fixEmptyAndTrim(checkoutDirectory);
+	}
 
-		listener.getLogger().println("(Creating and/or clearing " + logdir.getName() + " directory");
-		logdir.mkdirs();
-		logdir.deleteContents();
+	/**
+	 * @return workspace relative directory the repository is checked out to, null for the workspace itself
+	 */
+	@CheckForNull
+	public String getCheckoutDirectory() {
+		return checkoutDirectory;
+	}
 
-		FilePath htmldir = logdir.child("html");
-		htmldir.mkdirs();
+	@DataBoundSetter
+	public void setSuitesPerProcess(int suitesPerProcess) {
+		this.suitesPerProcess = (suitesPerProcess > 1 ? suitesPerProcess : null);
+	}
 
-		FilePath junitdir = logdir.child("junit");
-		junitdir.mkdirs();
+	/**
+	 * @return maximum number of expanded suites with identical custom parameters passed to a single QF-Test call
+	 */
+	public int getSuitesPerProcess() {
+		return (suitesPerProcess != null ? suitesPerProcess : 1);
+	}
 
-		FilePath qrzdir = logdir.child("qrz");
-		qrzdir.mkdirs();
+	@DataBoundSetter
+	public void setDaemonPoolSize(int daemonPoolSize) {
+		this.daemonPoolSize = (daemonPoolSize > 0 ? daemonPoolSize : null);
+	}
 
+	/**
+	 * @return maximum number of reusable QF-Test daemons on the node, 0 if every suite is run by a fresh QF-Test process
+	 */
+	public int getDaemonPoolSize() {
+		return (daemonPoolSize != null ? daemonPoolSize : 0);
+	}
 
-		ThrowingFunction<QFTestCommandLineBuilder.RunMode, QFTestCommandLineBuilder, ?> newQFTCommandLine = (QFTestCommandLineBuilder.RunMode aMode) -> {
+	@DataBoundSetter
+	public void setSuiteTimeout(int suiteTimeout) {
+		this.suiteTimeout = (suiteTimeout > 0 ? suiteTimeout : null);
+	}
 
-			String path;
+	/**
+	 * @return minutes after which a single QF-Test call is killed, 0 for unlimited
+	 */
+	public int getSuiteTimeout() {
+		return (suiteTimeout != null ? suiteTimeout : 0);
+	}
 
-			if (this.getCustomPath() != null) {
-				path = this.customPath;
-			} else if (launcher.isUnix() && getDescriptor().getQfPathUnix() != null) {
-				path = getDescriptor().qfPathUnix;
-			} else if (!launcher.isUnix() && getDescriptor().getQfPath() != null) {
-				path = this.getDescriptor().qfPath;
-			} else {
-				if (launcher.isUnix()) {
-					path = "qftest";
-				} else {
-					path = "qftestc.exe";
-				}
-			}
+	@DataBoundSetter
+	public void setGlobalTimeout(int globalTimeout) {
+		this.globalTimeout = (globalTimeout > 0 ? globalTimeout : null);
+	}
 
-			QFTestCommandLineBuilder command = new QFTestCommandLineBuilder(path, aMode);
-			command.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch");
-
-			return command;
-
-		};
-
-		 ThrowingFunction<QFTestCommandLineBuilder, Proc, ?> startQFTestProc = (QFTestCommandLineBuilder args) -> {
-
-			 return launcher.new ProcStarter()
-					 .cmds(args)
-					 .stdout(listener)
-					 .pwd(workspace)
-					 .envs(env)
-					 .start();
-		 };
-
-		Consumer<String> resultSetter = (String resAsString) -> {
-			run.setResult(Result.fromString(resAsString));
-		};
-
-		 //RUN SUITES
-		 suitefield.stream()
-				 .peek(sf -> listener.getLogger().println(sf.toString()))
-				 .map(sf -> new Suites(
-				 		env.expand(sf.getSuitename()), env.expand(sf.getCustomParam())
-				 ))
-				 .peek(sf -> listener.getLogger().println(sf.toString()))
-				 .flatMap(sf -> {
-					try {
-						return sf.expand(workspace);
-					} catch (java.lang.Exception ex) {
-						Functions.printStackTrace(
-							ex, listener.fatalError(
-								new StringBuilder("During expansion of").append(sf).append("\n").append(ex.getMessage()).toString()
-						));
-						return Stream.<Suites>empty();
-					}
-				 })
-				 .forEach(sf -> {
-					 try {
-						 QFTestCommandLineBuilder args = newQFTCommandLine.apply(QFTestCommandLineBuilder.RunMode.RUN);
-
-						 args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-run")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.html")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.html")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.junit")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-report.xml")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-gendoc")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-testdoc")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.DROP, "-pkgdoc")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-nomessagewindow")
-								 .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", qrzdir.getRemote());
-						 args.addSuiteConfig(workspace, sf);
-
-						 int ret = startQFTestProc.apply(args).join();
-
-						 addToReducedReturnValue((char) ret);
-						 listener.getLogger().println("  Finished with return value: " + ret);
-
-
-					 } catch (java.lang.Exception ex) {
-						 listener.error(ex.getMessage());
-						 resultSetter.accept(this.getOnTestFailure());
-						 Functions.printStackTrace(ex, listener.fatalError(ex.getMessage()));
-					 }
-				 });
-
-		//DETEERMINE BUILD STATUS
-
-        if (reducedQFTReturnValue != null ) {
-			switch (reducedQFTReturnValue.charValue()) {
-				case (0):
-					//run.setResult(run.getResult().combine(Result.SUCCESS));
-					resultSetter.accept(Result.SUCCESS.toString());
-					break;
-				case (1):
-					//run.setResult(run.getResult().combine(onTestWarning));
-					resultSetter.accept(this.getOnTestWarning());
-					break;
-				case (2):
-					//run.setResult(run.getResult().combine(onTestError));
-					resultSetter.accept(this.getOnTestError());
-					break;
-				case (3):
-					//run.setResult(run.getResult().combine(onTestException));
-					resultSetter.accept(this.getOnTestException());
-					break;
-				default:
-					//run.setResult(run.getResult().combine(onTestFailure));
-					resultSetter.accept(this.getOnTestFailure());
-					break;
-			}
-		} else {
-			resultSetter.accept(this.getOnTestFailure());
-		}
+	/**
+	 * @return minutes after which all QF-Test calls of the build step are killed or skipped, 0 for unlimited
+	 */
+	public int getGlobalTimeout() {
+		return (globalTimeout != null ? globalTimeout : 0);
+	}
 
-		 //PICKUP ARTIFACTS
-		java.util.function.Function<FilePath, String> fp_names = (fp -> fp.getName());
-		run.pickArtifactManager().archive(
-				qrzdir, launcher, new BuildListenerAdapter(listener),
-				Arrays.stream(qrzdir.list("*.q*"))
-						.collect(Collectors.toMap(fp_names, fp_names))
-		);
+	@DataBoundSetter
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = (idleTimeout > 0 ? idleTimeout : null);
+	}
 
-		//CREATE REPORTS
-		listener.getLogger().println("Creating reports");
+	/**
+	 * @return minutes without output or run log progress after which a QF-Test call is killed, 0 for unlimited
+	 */
+	public int getIdleTimeout() {
+		return (idleTimeout != null ? idleTimeout : 0);
+	}
 
-		try {
+	@DataBoundSetter
+	public void setIncrementalReports(boolean incrementalReports) {
+		this.incrementalReports = incrementalReports;
+	}
 
-			QFTestCommandLineBuilder args = newQFTCommandLine.apply(QFTestCommandLineBuilder.RunMode.GENREPORT);
-			args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", qrzdir.getRemote());
+	/**
+	 * @return true, if a report is created for every QF-Test call as soon as it has finished
+	 */
+	public boolean isIncrementalReports() {
+		return incrementalReports;
+	}
 
-			RunLogs rl = new RunLogs(
-					new ArgumentListBuilder(
-							"-report.html", htmldir.getRemote(), "-report.junit", junitdir.getRemote()
-					).toStringWithQuote()
-			);
+	@DataBoundSetter
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
 
-			int nReports = args.addSuiteConfig(qrzdir, rl);
-			if (nReports > 0) {
-				startQFTestProc.apply(args).join();
-				htmldir.child("report.html").renameTo(htmldir.child("index.html"));
-			} else {
-				listener.getLogger().println("No reports found. Marking run with `test failure'");
-				run.setResult(onTestFailure);
-			}
-		} catch (java.lang.Exception ex) {
-			resultSetter.accept(this.getOnTestFailure());
-			Functions.printStackTrace(ex, listener.fatalError(ex.getMessage()));
+	/**
+	 * @return true, if completed QF-Test calls are recorded in the report directory and not run again by the next attempt
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+	@DataBoundSetter
+	public void setResultCache(boolean resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @return true, if the outcome of QF-Test calls is taken from the {@link ResultCache} when all their inputs are unchanged
+	 */
+	public boolean isResultCache() {
+		return resultCache;
+	}
+
+	@DataBoundSetter
+	public void setSutArtifacts(String sutArtifacts) {
+		this.sutArtifacts = Util.fixEmptyAndTrim(sutArtifacts);
+	}
+
+	/**
+	 * @return Ant pattern of the SUT artifacts in the workspace whose contents are part of the result cache key, or null
+	 */
+	@CheckForNull
+	public String getSutArtifacts() {
+		return sutArtifacts;
+	}
+
+	@DataBoundSetter
+	public void setVirtualDisplays(boolean virtualDisplays) {
+		this.virtualDisplays = virtualDisplays;
+	}
+
+	/**
+	 * @return true, if every QF-Test call gets a virtual display (Xvfb) of its own on Unix agents
+	 */
+	public boolean isVirtualDisplays() {
+		return virtualDisplays;
+	}
+
+	@DataBoundSetter
+	public void setVirtualDisplayScreen(String virtualDisplayScreen) {
+		final String screen = Util.fixEmptyAndTrim(virtualDisplayScreen);
+		this.virtualDisplayScreen = (screen != null && !screen.equals(DescriptorImpl.defaultVirtualDisplayScreen) ? screen : null);
+	}
+
+	/**
+	 * @return geometry and depth of the screen of the virtual displays
+	 */
+	public String getVirtualDisplayScreen() {
+		return (virtualDisplayScreen != null ? virtualDisplayScreen : DescriptorImpl.defaultVirtualDisplayScreen);
+	}
+
+	@DataBoundSetter
+	public void setPublishTestResults(boolean publishTestResults) {
+		this.publishTestResults = publishTestResults;
+	}
+
+	/**
+	 * @return true, if the JUnit reports are parsed and published as {@link QFTestResultAction}
+	 */
+	public boolean isPublishTestResults() {
+		return publishTestResults;
+	}
+
+	@DataBoundSetter
+	public void setRetries(int retries) {
+		this.retries = (retries > 0 ? retries : null);
+	}
+
+	/**
+	 * @return how often a QF-Test call is repeated at most if its return value exceeds the retry threshold
+	 */
+	public int getRetries() {
+		return (retries != null ? retries : 0);
+	}
+
+	@DataBoundSetter
+	public void setRetryThreshold(int retryThreshold) {
+		this.retryThreshold = (retryThreshold != DescriptorImpl.defaultRetryThreshold ? retryThreshold : null);
+	}
+
+	/**
+	 * @return highest QF-Test return value which is accepted without a retry
+	 */
+	public int getRetryThreshold() {
+		return (retryThreshold != null ? retryThreshold : DescriptorImpl.defaultRetryThreshold);
+	}
+
+	@DataBoundSetter
+	public void setQuarantineThreshold(int quarantineThreshold) {
+		this.quarantineThreshold = (quarantineThreshold > 0 ? quarantineThreshold : null);
+	}
+
+	/**
+	 * @return percentage of flaky runs from which on a suite no longer affects the build result, 0 to disable quarantine
+	 */
+	public int getQuarantineThreshold() {
+		return (quarantineThreshold != null ? quarantineThreshold : 0);
+	}
+
+	/**
+	 * @return true, if a QF-Test call with the given return value should be retried
+	 */
+	boolean needsRetry(int ret) {
+		return (ret < 0 || ret > getRetryThreshold());
+	}
+
+	@DataBoundSetter
+	public void setAbortPolicy(String abortPolicy) {
+		AbortPolicy policy = AbortPolicy.valueOf(abortPolicy);
+		this.abortPolicy = (policy != AbortPolicy.NEVER ? policy : null);
+	}
+
+	public String getAbortPolicy() {
+		return abortPolicy().name();
+	}
+
+	/**
+	 * @return when to skip the remaining suites and cancel running QF-Test calls
+	 */
+	AbortPolicy abortPolicy() {
+		return (abortPolicy != null ? abortPolicy : AbortPolicy.NEVER);
+	}
+
+	@DataBoundSetter
+	public void setReportCleanup(String reportCleanup) {
+		ReportCleanup cleanup = ReportCleanup.valueOf(reportCleanup);
+		this.reportCleanup = (cleanup != ReportCleanup.WIPE ? cleanup : null);
+	}
+
+	public String getReportCleanup() {
+		return reportCleanup().name();
+	}
+
+	/**
+	 * @return how the output of previous builds is removed from the report directory
+	 */
+	ReportCleanup reportCleanup() {
+		return (reportCleanup != null ? reportCleanup : ReportCleanup.WIPE);
+	}
+
+	@DataBoundSetter
+	public void setKeepReports(int keepReports) {
+		this.keepReports = (keepReports != DescriptorImpl.defaultKeepReports ? keepReports : null);
+	}
+
+	/**
+	 * @return number of builds whose report directories are retained by the {@link ReportCleanup#PER_BUILD} cleanup
+	 */
+	public int getKeepReports() {
+		return (keepReports != null ? keepReports : DescriptorImpl.defaultKeepReports);
+	}
+
+	@DataBoundSetter
+	public void setMaxErrors(int maxErrors) {
+		this.maxErrors = (maxErrors > 1 ? maxErrors : null);
+	}
+
+	/**
+	 * @return number of QF-Test calls with errors after which the build is aborted by the {@link AbortPolicy#MAX_ERRORS} policy
+	 */
+	public int getMaxErrors() {
+		return (maxErrors != null ? maxErrors : 1);
+	}
+
+	@DataBoundSetter
+	public void setShardIndex(int shardIndex) {
+		this.shardIndex = (shardIndex > 0 ? shardIndex : null);
+	}
+
+	/**
+	 * @return zero based index of the slice of expanded suites this step runs
+	 */
+	public int getShardIndex() {
+		return (shardIndex != null ? shardIndex : 0);
+	}
+
+	@DataBoundSetter
+	public void setShardCount(int shardCount) {
+		this.shardCount = (shardCount > 1 ? shardCount : null);
+	}
+
+	/**
+	 * @return number of slices the expanded suites are split into
+	 */
+	public int getShardCount() {
+		return (shardCount != null ? shardCount : 1);
+	}
+
+
+	/** Called by XStream when deserializing object
+	 */
+	protected Object readResolve() {
+	    this.setCustomPath(customPath);
+	    if (customReports!=null && customReports.isEmpty()) {
+	    	customReports = null;
 		}
 
-		//Publish HTML report
-		HtmlPublisher.publishReports(
-				run, workspace, listener, Collections.singletonList(new HtmlPublisherTarget(
-						"QF-Test Report", htmldir.getRemote(), "index.html", true, false, false
-				)), this.getClass()
-		);
+	    return this;
+	}
+
+
+	/** Path of a file below base, with forward slashes as used by the artifact manager
+	 */
+	static String relativePath(FilePath base, FilePath fp) {
+		final String path = fp.getRemote();
+		return (path.startsWith(base.getRemote()) ? path.substring(base.getRemote().length()) : path)
+				.replace('\\', '/')
+				.replaceFirst("^/+", "");
+	}
+
+	/** Key of an expanded suite in the {@link SuiteHistory}, independent of the workspace location
+	 */
+	static String historyKey(FilePath workspace, Suites sf) {
+		return relativePath(workspace, workspace.child(sf.getSuitename()));
+	}
+
+	/**
+	 * Maps a reduced QF-Test return value to the configured Jenkins build result
+	 *
+	 * @param reduced the reduced return value, null if QF-Test has not been run at all
+	 * @return name of the build result
+	 */
+	String resultFor(@CheckForNull Character reduced) {
+		if (reduced == null) {
+			return this.getOnTestFailure();
+		}
+		switch (reduced.charValue()) {
+			case (0):
+				return Result.SUCCESS.toString();
+			case (1):
+				return this.getOnTestWarning();
+			case (2):
+				return this.getOnTestError();
+			case (3):
+				return this.getOnTestException();
+			default:
+				return this.getOnTestFailure();
+		}
+	}
+
+	/**
+	 * @return the worst build result any QF-Test outcome is mapped to
+	 */
+	Result getWorstMappedResult() {
+		return Stream.of(getOnTestWarning(), getOnTestError(), getOnTestException(), getOnTestFailure())
+				.map(Result::fromString)
+				.reduce(Result.SUCCESS, (a, b) -> a.isWorseThan(b) ? a : b);
+	}
+
+	@Override
+	public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+		new QFTestStepRunner(this, run, workspace, launcher, listener).run();
 	}
 
 
@@ -420,6 +680,45 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 		}
 	}
 
+	/**
+	 * Ways to get rid of the output of previous builds in the report directory
+	 */
+	public enum ReportCleanup {
+		WIPE("Delete the contents of the report directory"),
+		ROTATE("Move the report directory aside and delete it in the background"),
+		PER_BUILD("Use a subdirectory per build and retain those of recent builds");
+
+		private final String description;
+
+		ReportCleanup(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	/**
+	 * Policies for aborting a build step before all suites have been run
+	 */
+	public enum AbortPolicy {
+		NEVER("Run all suites"),
+		FIRST_FAILURE("Stop after the first QF-Test call mapped to a non-successful result"),
+		MAX_ERRORS("Stop after a number of QF-Test calls with errors, exceptions or failures"),
+		WORST_RESULT("Stop once the build result cannot get any worse");
+
+		private final String description;
+
+		AbortPolicy(String description) {
+			this.description = description;
+		}
+
+		public String getDescription() {
+			return description;
+		}
+	}
+
 	/**
 	 * Implementation of descriptor
 	 */
@@ -428,6 +727,12 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 	public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
 
 		public static final String defaultReportDir = "_qftestRunLogs";
+		public static final int defaultMaxParallel = 1;
+		public static final int defaultRetryThreshold = 1;
+		public static final int defaultKeepReports = 5;
+		public static final String defaultVirtualDisplayScreen = "1920x1080x24";
+		public static final int defaultResultCacheTtl = 24;
+		public static final int defaultResultCacheSize = 1024;
 
 		public final Result defaultTestWarning = Result.SUCCESS;
 		public final Result defaultTestError = Result.FAILURE;
@@ -440,6 +745,15 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 		@CheckForNull
 		private String qfPathUnix;
 
+		private int maxProcessesPerAgent;
+		private int memoryPerProcess;
+		private int licenseSeats;
+
+		@CheckForNull
+		private String resultCacheDir;
+		private int resultCacheTtl = defaultResultCacheTtl;
+		private int resultCacheSize = defaultResultCacheSize;
+
 		public DescriptorImpl() {
 
 			load();
@@ -484,6 +798,12 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 
 			qfPath = formData.getString("qfPath");
 			qfPathUnix = formData.getString("qfPathUnix");
+			maxProcessesPerAgent = Math.max(0, formData.optInt("maxProcessesPerAgent", 0));
+			memoryPerProcess = Math.max(0, formData.optInt("memoryPerProcess", 0));
+			licenseSeats = Math.max(0, formData.optInt("licenseSeats", 0));
+			resultCacheDir = Util.fixEmptyAndTrim(formData.optString("resultCacheDir"));
+			resultCacheTtl = Math.max(0, formData.optInt("resultCacheTtl", defaultResultCacheTtl));
+			resultCacheSize = Math.max(0, formData.optInt("resultCacheSize", defaultResultCacheSize));
 
 			save();
 			return super.configure(req, formData);
@@ -517,6 +837,58 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 			}
 		}
 
+		/**
+		 * @return maximum number of QF-Test processes on an agent across all builds, 0 for unlimited
+		 */
+		public int getMaxProcessesPerAgent() {
+			return maxProcessesPerAgent;
+		}
+
+		/**
+		 * @return estimated memory in MB needed by a QF-Test process and its SUT, 0 to not limit by memory
+		 */
+		public int getMemoryPerProcess() {
+			return memoryPerProcess;
+		}
+
+		/**
+		 * @return maximum number of QF-Test processes across all agents, 0 for unlimited
+		 */
+		public int getLicenseSeats() {
+			return licenseSeats;
+		}
+
+		AdmissionControl.Limits getAdmissionLimits() {
+			return new AdmissionControl.Limits(maxProcessesPerAgent, memoryPerProcess, licenseSeats);
+		}
+
+		/**
+		 * @return directory of the result cache on the controller, e.g. on a shared file system, null for the default below JENKINS_HOME
+		 */
+		@CheckForNull
+		public String getResultCacheDir() {
+			return resultCacheDir;
+		}
+
+		/**
+		 * @return hours a cached result is valid, 0 for unlimited
+		 */
+		public int getResultCacheTtl() {
+			return resultCacheTtl;
+		}
+
+		/**
+		 * @return maximum size of the result cache in MB, 0 for unlimited
+		 */
+		public int getResultCacheSize() {
+			return resultCacheSize;
+		}
+
+		ResultCache getResultCache() {
+			final File dir = (resultCacheDir != null ? new File(resultCacheDir) : new File(Jenkins.get().getRootDir(), "qftest-result-cache"));
+			return new ResultCache(dir, TimeUnit.HOURS.toMillis(resultCacheTtl), resultCacheSize * 1024L * 1024L);
+		}
+
 		//TODO: change this
 		public FormValidation doCheckDirectory(@QueryParameter String value) {
 
@@ -529,6 +901,136 @@ public class QFTestConfigBuilder extends Builder implements SimpleBuildStep
 		}
 
 
+		/**
+		 * Resolves the QF-Test binary to call on the node of the given launcher
+		 *
+		 * @param customPath binary configured for the build step, takes precedence
+		 * @param launcher launcher of the node the binary is called on
+		 * @return path to the QF-Test binary
+		 */
+		public String getQFTestBinary(@CheckForNull String customPath, Launcher launcher) {
+			if (customPath != null) {
+				return customPath;
+			} else if (launcher.isUnix() && getQfPathUnix() != null) {
+				return qfPathUnix;
+			} else if (!launcher.isUnix() && getQfPath() != null) {
+				return qfPath;
+			} else {
+				if (launcher.isUnix()) {
+					return "qftest";
+				} else {
+					return "qftestc.exe";
+				}
+			}
+		}
+
+		public FormValidation doCheckSutArtifacts(@QueryParameter String value, @QueryParameter boolean resultCache) {
+			if (resultCache && Util.fixEmptyAndTrim(value) == null) {
+				return FormValidation.warning("The result cache is not used without SUT artifacts");
+			}
+			return FormValidation.ok();
+		}
+
+		public FormValidation doCheckRetries(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public FormValidation doCheckRetryThreshold(@QueryParameter String value) {
+			try {
+				int v = Integer.parseInt(value);
+				if (v < 0 || v > 3) {
+					return FormValidation.error("Must be a QF-Test return value between 0 and 3");
+				}
+				return FormValidation.ok();
+			} catch (NumberFormatException ex) {
+				return FormValidation.error("Not an integer");
+			}
+		}
+
+		public FormValidation doCheckQuarantineThreshold(@QueryParameter String value) {
+			try {
+				int v = Integer.parseInt(value);
+				if (v < 0 || v > 100) {
+					return FormValidation.error("Must be a percentage between 0 and 100");
+				}
+				return FormValidation.ok();
+			} catch (NumberFormatException ex) {
+				return FormValidation.error("Not an integer");
+			}
+		}
+
+		public FormValidation doCheckSuiteTimeout(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public FormValidation doCheckGlobalTimeout(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public FormValidation doCheckIdleTimeout(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public ListBoxModel doFillReportCleanupItems() {
+			ListBoxModel items = new ListBoxModel();
+			for (ReportCleanup cleanup : ReportCleanup.values()) {
+				items.add(cleanup.getDescription(), cleanup.name());
+			}
+			return items;
+		}
+
+		public FormValidation doCheckKeepReports(@QueryParameter String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+		public ListBoxModel doFillAbortPolicyItems() {
+			ListBoxModel items = new ListBoxModel();
+			for (AbortPolicy policy : AbortPolicy.values()) {
+				items.add(policy.getDescription(), policy.name());
+			}
+			return items;
+		}
+
+		public FormValidation doCheckMaxErrors(@QueryParameter String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+		public FormValidation doCheckFullRunEvery(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public FormValidation doCheckSuitesPerProcess(@QueryParameter String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+		public FormValidation doCheckDaemonPoolSize(@QueryParameter String value) {
+			FormValidation ret = FormValidation.validateNonNegativeInteger(value);
+			if (ret.kind == FormValidation.Kind.OK && Integer.parseInt(value) > 0 && licenseSeats > 0) {
+				return FormValidation.warning("QF-Test daemons are not used while the license seats are limited in the global configuration");
+			}
+			return ret;
+		}
+
+		public FormValidation doCheckVirtualDisplayScreen(@QueryParameter String value) {
+			if (Util.fixEmptyAndTrim(value) == null || value.trim().matches("\\d+x\\d+x\\d+")) {
+				return FormValidation.ok();
+			}
+			return FormValidation.error("Expected WIDTHxHEIGHTxDEPTH, e.g. " + defaultVirtualDisplayScreen);
+		}
+
+		public FormValidation doCheckShardIndex(@QueryParameter String value) {
+			return FormValidation.validateNonNegativeInteger(value);
+		}
+
+		public FormValidation doCheckShardCount(@QueryParameter String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+		public FormValidation doCheckMaxParallel(@QueryParameter String value) {
+			return FormValidation.validatePositiveInteger(value);
+		}
+
+
 		private ListBoxModel fillOnTestResult(Result defaultSelect) {
 			ListBoxModel items = new ListBoxModel();
 			Stream.of(Result.SUCCESS, Result.UNSTABLE, Result.FAILURE, Result.ABORTED, Result.NOT_BUILT)
@@ -0,0 +1,118 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.util.NullStream;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launches QF-Test daemons (<tt>qftest -batch -daemon</tt>) on the node of a launcher.
+ *
+ * The daemons listen on a free port of the node and are excluded from the process tree killer,
+ * so they outlive the build that started them and can be reused by later builds.
+ */
+class QFTestDaemonLauncher implements QFTestDaemonPool.DaemonLauncher {
+
+    static final long STARTUP_TIMEOUT = TimeUnit.MINUTES.toMillis(2);
+
+    private final Launcher launcher;
+    private final String binary;
+    private final FilePath pwd;
+    private final EnvVars env;
+
+    QFTestDaemonLauncher(Launcher launcher, String binary, FilePath pwd, EnvVars env) {
+        this.launcher = launcher;
+        this.binary = binary;
+        this.pwd = pwd;
+        this.env = new EnvVars(env);
+        //keep the daemon alive after the build has finished
+        this.env.put("BUILD_ID", "dontKillMe");
+        this.env.put("JENKINS_NODE_COOKIE", "dontKillMe");
+    }
+
+    @Override
+    public QFTestDaemonPool.Daemon launch() throws IOException, InterruptedException {
+        final int port = launcher.getChannel().call(new FreePort());
+
+        QFTestCommandLineBuilder args = new QFTestCommandLineBuilder(binary, QFTestCommandLineBuilder.RunMode.DAEMON);
+        args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch")
+                .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-daemonport", Integer.toString(port));
+
+        final Proc proc = launcher.new ProcStarter()
+                .cmds(args)
+                .stdout(new NullStream())
+                .pwd(pwd)
+                .envs(env)
+                .start();
+
+        final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (!launcher.getChannel().call(new PortProbe(port))) {
+            if (!proc.isAlive()) {
+                throw new IOException("QF-Test daemon exited during startup with return value " + proc.join());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                proc.kill();
+                throw new IOException("QF-Test daemon did not accept connections on port " + port + " in time");
+            }
+            Thread.sleep(500);
+        }
+
+        return new QFTestDaemonPool.Daemon() {
+            @Override
+            public int getPort() {
+                return port;
+            }
+
+            @Override
+            public boolean isAlive() throws IOException, InterruptedException {
+                return proc.isAlive();
+            }
+
+            @Override
+            public void stop() throws IOException, InterruptedException {
+                proc.kill();
+            }
+        };
+    }
+
+    /** Finds a free local port on the node */
+    static class FreePort extends MasterToSlaveCallable<Integer, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Integer call() throws IOException {
+            try (ServerSocket s = new ServerSocket(0)) {
+                return s.getLocalPort();
+            }
+        }
+    }
+
+    /** Checks whether a local port on the node accepts connections */
+    static class PortProbe extends MasterToSlaveCallable<Boolean, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int port;
+
+        PortProbe(int port) {
+            this.port = port;
+        }
+
+        @Override
+        public Boolean call() {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("localhost", port), 1000);
+                return true;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of long-lived QF-Test daemon processes.
+ *
+ * There is one pool per key (see {@link #forKey(String)}), shared by all builds with that key. A daemon keeps the
+ * working directory and environment it was launched with, so the key has to cover them.
+ * Suite runs lease an idle daemon, which is only launched if none is available (a pool miss).
+ * Daemons that have died are discarded, those idle for longer than {@link #IDLE_TIMEOUT} are stopped
+ * by a timer every {@link #REAP_INTERVAL} ms.
+ */
+class QFTestDaemonPool {
+
+    private static final Logger LOGGER = Logger.getLogger(QFTestDaemonPool.class.getName());
+
+    static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    static final long REAP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    /** A running QF-Test daemon */
+    interface Daemon {
+        /** @return the port the daemon listens on */
+        int getPort();
+
+        boolean isAlive() throws IOException, InterruptedException;
+
+        void stop() throws IOException, InterruptedException;
+    }
+
+    /** Starts a new daemon and waits until it accepts connections */
+    interface DaemonLauncher {
+        Daemon launch() throws IOException, InterruptedException;
+    }
+
+    /** A daemon lent to a single suite run */
+    static class Lease {
+        final Daemon daemon;
+        final boolean hit;
+
+        Lease(Daemon daemon, boolean hit) {
+            this.daemon = daemon;
+            this.hit = hit;
+        }
+    }
+
+    private static class Idle {
+        final Daemon daemon;
+        final long since;
+
+        Idle(Daemon daemon, long since) {
+            this.daemon = daemon;
+            this.since = since;
+        }
+    }
+
+    private static final Map<String, QFTestDaemonPool> pools = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService reaper;
+
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    private int leased = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong launchMillis = new AtomicLong();
+
+    /**
+     * @param key identifies the node, QF-Test binary, working directory and environment of the daemons
+     */
+    static QFTestDaemonPool forKey(String key) {
+        startReaper();
+        return pools.computeIfAbsent(key, k -> new QFTestDaemonPool());
+    }
+
+    private static synchronized void startReaper() {
+        if (reaper == null) {
+            reaper = Executors.newSingleThreadScheduledExecutor(
+                    new NamingThreadFactory(new DaemonThreadFactory(), "QF-Test daemon reaper")
+            );
+            reaper.scheduleWithFixedDelay(() -> pools.values().forEach(p -> p.reapIdle(System.currentTimeMillis())),
+                    REAP_INTERVAL, REAP_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the daemons idle for longer than {@link #IDLE_TIMEOUT}
+     *
+     * @param now the current time in ms
+     * @return the number of daemons stopped
+     */
+    int reapIdle(long now) {
+        final List<Daemon> expired = new ArrayList<>();
+        synchronized (this) {
+            idle.removeIf(i -> {
+                if (now - i.since > IDLE_TIMEOUT) {
+                    expired.add(i.daemon);
+                    return true;
+                }
+                return false;
+            });
+        }
+        expired.forEach(QFTestDaemonPool::stopQuietly);
+        return expired.size();
+    }
+
+    /** Stops a daemon, which is discarded anyway */
+    private static void stopQuietly(Daemon daemon) {
+        try {
+            daemon.stop();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Unable to stop QF-Test daemon", ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return whether a daemon is alive, false if that cannot be determined
+     */
+    private static boolean isAlive(Daemon daemon) throws InterruptedException {
+        try {
+            return daemon.isAlive();
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Unable to check QF-Test daemon, discarding it", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Leases an idle daemon or launches a new one.
+     * Blocks while maxSize daemons are leased already.
+     *
+     * @param launcher used to launch a daemon on a pool miss
+     * @param maxSize maximum number of daemons leased concurrently from this pool
+     * @return the lease, to be handed back via {@link #release(Lease, boolean)}
+     */
+    Lease acquire(DaemonLauncher launcher, int maxSize) throws IOException, InterruptedException {
+        List<Daemon> expired = new ArrayList<>();
+        Daemon candidate = null;
+        synchronized (this) {
+            while (leased >= maxSize) {
+                wait();
+            }
+            leased++;
+            final long now = System.currentTimeMillis();
+            while (!idle.isEmpty()) {
+                Idle i = idle.pollFirst();
+                if (now - i.since > IDLE_TIMEOUT) {
+                    expired.add(i.daemon);
+                } else {
+                    candidate = i.daemon;
+                    break;
+                }
+            }
+        }
+
+        try {
+            expired.forEach(QFTestDaemonPool::stopQuietly);
+            if (candidate != null) {
+                if (isAlive(candidate)) {
+                    hits.incrementAndGet();
+                    return new Lease(candidate, true);
+                }
+                stopQuietly(candidate);
+            }
+
+            misses.incrementAndGet();
+            final long started = System.currentTimeMillis();
+            Daemon d = launcher.launch();
+            launchMillis.addAndGet(System.currentTimeMillis() - started);
+            return new Lease(d, false);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            synchronized (this) {
+                leased--;
+                notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Hands a daemon back to the pool.
+     *
+     * @param lease the lease obtained by {@link #acquire(DaemonLauncher, int)}
+     * @param reusable false, if the daemon is in an unknown state (e.g. the run was aborted) and has to be stopped
+     */
+    void release(Lease lease, boolean reusable) throws IOException, InterruptedException {
+        synchronized (this) {
+            leased--;
+            if (reusable) {
+                idle.addFirst(new Idle(lease.daemon, System.currentTimeMillis()));
+            }
+            notifyAll();
+        }
+        if (!reusable) {
+            lease.daemon.stop();
+        }
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the average time it took to launch a daemon in ms, used to estimate the time saved by pool hits
+     */
+    long getAverageLaunchMillis() {
+        final long m = misses.get();
+        return (m > 0 ? launchMillis.get() / m : 0);
+    }
+}
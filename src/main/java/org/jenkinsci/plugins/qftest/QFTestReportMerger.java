@@ -0,0 +1,184 @@
+package org.jenkinsci.plugins.qftest;
+
+import htmlpublisher.HtmlPublisher;
+import htmlpublisher.HtmlPublisherTarget;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.AbstractProject;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.tasks.BuildStepDescriptor;
+import hudson.tasks.Builder;
+import hudson.util.ArgumentListBuilder;
+import jenkins.model.Jenkins;
+import jenkins.tasks.SimpleBuildStep;
+import jenkins.util.VirtualFile;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+
+/**
+ * Combines the run logs of all shards of a build (see {@link QFTestConfigBuilder#getShardCount()})
+ * into a single QF-Test report.
+ *
+ * The run logs are taken from the build artifacts, so the shards may have run on different agents.
+ * The combined outcome is mapped onto the build result the way the shards map theirs, see {@link ShardPlanAction}.
+ * Missing shards or run logs count as a test failure.
+ */
+public class QFTestReportMerger extends Builder implements SimpleBuildStep {
+
+    @CheckForNull
+    private String customPath;
+
+    @CheckForNull
+    private String customReports;
+
+    @DataBoundConstructor
+    public QFTestReportMerger() {
+    }
+
+    @DataBoundSetter
+    public void setCustomPath(String customPath) {
+        this.customPath = (customPath == null || customPath.isEmpty() ? null : customPath);
+    }
+
+    public @CheckForNull String getCustomPath() {
+        return customPath;
+    }
+
+    @DataBoundSetter
+    public void setReportDirectory(String customReports) {
+        this.customReports = (customReports == null || customReports.isEmpty() || customReports.equals(DescriptorImpl.defaultReportDir) ? null : customReports);
+    }
+
+    public @Nonnull String getReportDirectory() {
+        return (customReports != null ? customReports : DescriptorImpl.defaultReportDir);
+    }
+
+    @Override
+    public void perform(@Nonnull Run<?, ?> run, @Nonnull FilePath workspace, @Nonnull Launcher launcher, @Nonnull TaskListener listener) throws InterruptedException, IOException {
+
+        FilePath logdir = workspace.child(getReportDirectory());
+
+        listener.getLogger().println("(Creating and/or clearing " + logdir.getName() + " directory");
+        logdir.mkdirs();
+        logdir.deleteContents();
+
+        FilePath htmldir = logdir.child("html");
+        htmldir.mkdirs();
+
+        FilePath junitdir = logdir.child("junit");
+        junitdir.mkdirs();
+
+        FilePath qrzdir = logdir.child("qrz");
+        qrzdir.mkdirs();
+
+        //COLLECT RUN LOGS OF ALL SHARDS
+        VirtualFile artifacts = run.getArtifactManager().root();
+        for (String path : artifacts.list("**/*.q??")) {
+            FilePath target = qrzdir.child(path);
+            target.getParent().mkdirs();
+            try (InputStream in = artifacts.child(path).open()) {
+                target.copyFrom(in);
+            }
+        }
+
+        ShardPlanAction plan = run.getAction(ShardPlanAction.class);
+        if (plan != null) {
+            plan.getReturnValues().forEach((shard, ret) ->
+                    listener.getLogger().println("  Shard " + shard + " finished with return value: " + ret));
+            if (plan.countWithoutSuites() > 0) {
+                listener.getLogger().println("  " + plan.countWithoutSuites() + " shards had no suites to run");
+            }
+            if (plan.getFinishedCount() < plan.getShardCount()) {
+                listener.error("Only " + plan.getFinishedCount() + " of " + plan.getShardCount() + " shards have finished");
+                run.setResult(plan.getOnTestFailure());
+            }
+            final Character reduced = plan.getReducedReturnValue();
+            final Result result = plan.getWorstResult();
+            if (result != null) {
+                listener.getLogger().println("Combined return value of all shards: "
+                        + (reduced != null ? Integer.toString(reduced.charValue()) : "none") + ", mapped to " + result);
+                run.setResult(result);
+            }
+        }
+        final Result onTestFailure = (plan != null ? plan.getOnTestFailure() : Result.FAILURE);
+
+        //CREATE REPORTS
+        listener.getLogger().println("Creating reports");
+
+        try {
+            String binary = Jenkins.get().getDescriptorByType(QFTestConfigBuilder.DescriptorImpl.class)
+                    .getQFTestBinary(getCustomPath(), launcher);
+
+            QFTestCommandLineBuilder args = new QFTestCommandLineBuilder(binary, QFTestCommandLineBuilder.RunMode.GENREPORT);
+            args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch")
+                    .presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", qrzdir.getRemote());
+
+            RunLogs rl = new RunLogs(
+                    new ArgumentListBuilder(
+                            "-report.html", htmldir.getRemote(), "-report.junit", junitdir.getRemote()
+                    ).toStringWithQuote()
+            );
+
+            int nReports = args.addSuiteConfig(qrzdir, rl);
+            if (nReports > 0) {
+                launcher.new ProcStarter()
+                        .cmds(args)
+                        .stdout(listener)
+                        .pwd(workspace)
+                        .envs(run.getEnvironment(listener))
+                        .join();
+                htmldir.child("report.html").renameTo(htmldir.child("index.html"));
+            } else if (plan == null || !plan.hasRunSuites()) {
+                listener.getLogger().println("No shard has run any suites, nothing to merge");
+                return;
+            } else {
+                listener.getLogger().println("No run logs found in the build artifacts. Marking run with `test failure'");
+                run.setResult(onTestFailure);
+            }
+        } catch (java.lang.InterruptedException ex) {
+            throw ex;
+        } catch (java.lang.Exception ex) {
+            run.setResult(onTestFailure);
+            Functions.printStackTrace(ex, listener.fatalError(ex.getMessage()));
+        }
+
+        //Publish HTML report
+        HtmlPublisher.publishReports(
+                run, workspace, listener, Collections.singletonList(new HtmlPublisherTarget(
+                        "QF-Test Report", htmldir.getRemote(), "index.html", true, false, false
+                )), this.getClass()
+        );
+    }
+
+    /**
+     * Implementation of descriptor
+     */
+    @Symbol("QFTestMergeReports")
+    @Extension
+    public static final class DescriptorImpl extends BuildStepDescriptor<Builder> {
+
+        public static final String defaultReportDir = QFTestConfigBuilder.DescriptorImpl.defaultReportDir;
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public boolean isApplicable(Class<? extends AbstractProject> aClass) {
+            return true;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Merge QF-Test shard reports";
+        }
+    }
+}
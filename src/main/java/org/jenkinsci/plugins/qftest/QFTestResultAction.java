@@ -0,0 +1,366 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.RunAction2;
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.CheckForNull;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Test results of the QF-Test steps of a build, parsed from their JUnit reports.
+ *
+ * Only the totals per suite are kept in the build record. The individual test cases are stored
+ * in a separate file in the build directory and are read on demand. All test cases of a suite
+ * are listed on its own page, see {@link #getDynamic}.
+ */
+public class QFTestResultAction implements RunAction2 {
+
+    static final String CASES_FILENAME = "qftest-testcases.tsv";
+
+    /** Maximum number of failed test cases listed on the result page */
+    static final int MAX_LISTED_FAILURES = 1000;
+
+    /** Outcome of a test case, in the order of increasing severity */
+    public enum Status {
+        PASSED, SKIPPED, FAILED, ERROR;
+
+        static Status fromElement(String element) {
+            switch (element) {
+                case "failure":
+                    return FAILED;
+                case "error":
+                    return ERROR;
+                default:
+                    return SKIPPED;
+            }
+        }
+    }
+
+    /**
+     * A single test case, one line of the case file:
+     * suite TAB test case TAB status TAB duration in ms TAB message
+     */
+    public static class CaseResult {
+        private final String suite;
+        private final String name;
+        private final Status status;
+        private final long duration;
+        private final String message;
+
+        CaseResult(String suite, String name, Status status, long duration, String message) {
+            this.suite = suite;
+            this.name = name;
+            this.status = status;
+            this.duration = duration;
+            this.message = message;
+        }
+
+        CaseResult withStatus(Status status, String message) {
+            return (status.compareTo(this.status) > 0 ? new CaseResult(suite, name, status, duration, message) : this);
+        }
+
+        public String getSuite() {
+            return suite;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        String format() {
+            return clean(suite) + '\t' + clean(name) + '\t' + status.name() + '\t' + duration + '\t' + clean(message);
+        }
+
+        @CheckForNull
+        static CaseResult parse(String line) {
+            String[] cols = line.split("\t", 5);
+            if (cols.length != 5) {
+                return null;
+            }
+            try {
+                return new CaseResult(cols[0], cols[1], Status.valueOf(cols[2]), Long.parseLong(cols[3]), cols[4]);
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+        }
+
+        private static String clean(String s) {
+            return s.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+        }
+    }
+
+    /**
+     * Totals of the test cases of a suite
+     */
+    public static class SuiteResult implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+        private int passed;
+        private int failed;
+        private int errors;
+        private int skipped;
+        private long duration;
+
+        SuiteResult(String name) {
+            this.name = name;
+        }
+
+        void add(CaseResult c) {
+            switch (c.getStatus()) {
+                case PASSED:
+                    passed++;
+                    break;
+                case FAILED:
+                    failed++;
+                    break;
+                case ERROR:
+                    errors++;
+                    break;
+                default:
+                    skipped++;
+                    break;
+            }
+            duration += c.getDuration();
+        }
+
+        void add(SuiteResult other) {
+            passed += other.passed;
+            failed += other.failed;
+            errors += other.errors;
+            skipped += other.skipped;
+            duration += other.duration;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPassed() {
+            return passed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getErrors() {
+            return errors;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public int getTotal() {
+            return passed + failed + errors + skipped;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    private transient Run<?, ?> run;
+
+    private final Map<String, SuiteResult> suites = new TreeMap<>();
+
+    /**
+     * Parses the JUnit reports of a step on the agent and adds their results to the action of the build.
+     * Parallel steps of the same build (e.g. shards) contribute to the same action.
+     */
+    static void publish(Run<?, ?> run, FilePath junitdir, TaskListener listener) throws IOException, InterruptedException {
+        final List<SuiteResult> results = junitdir.act(new JUnitResultParser.Scan(CASES_FILENAME));
+
+        synchronized (run) {
+            QFTestResultAction action = run.getAction(QFTestResultAction.class);
+            if (action == null) {
+                action = new QFTestResultAction();
+                run.addAction(action);
+            }
+            action.run = run;
+
+            try (InputStream in = junitdir.child(CASES_FILENAME).read();
+                 OutputStream out = Files.newOutputStream(action.getCasesFile().toPath(),
+                         StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                IOUtils.copy(in, out);
+            }
+            action.merge(results);
+            run.save();
+
+            SuiteResult total = action.getTotal();
+            listener.getLogger().println("QF-Test results: " + total.getTotal() + " test cases, " + total.getPassed() + " passed, "
+                    + total.getFailed() + " failed, " + total.getErrors() + " errors, " + total.getSkipped() + " skipped");
+        }
+    }
+
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.run = r;
+    }
+
+    public Run<?, ?> getRun() {
+        return run;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "clipboard.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "QF-Test Results";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "qftest-results";
+    }
+
+    private synchronized void merge(List<SuiteResult> results) {
+        for (SuiteResult r : results) {
+            suites.computeIfAbsent(r.getName(), SuiteResult::new).add(r);
+        }
+    }
+
+    public synchronized List<SuiteResult> getSuites() {
+        return new ArrayList<>(suites.values());
+    }
+
+    /**
+     * All test cases of a suite, the page of the suite below the result page
+     */
+    public static class SuiteCases {
+        private final QFTestResultAction action;
+        private final SuiteResult suite;
+
+        SuiteCases(QFTestResultAction action, SuiteResult suite) {
+            this.action = action;
+            this.suite = suite;
+        }
+
+        public Run<?, ?> getRun() {
+            return action.getRun();
+        }
+
+        public String getDisplayName() {
+            return suite.getName();
+        }
+
+        public SuiteResult getSuite() {
+            return suite;
+        }
+
+        public List<CaseResult> getCases() throws IOException {
+            return action.getCases(suite.getName());
+        }
+    }
+
+    /**
+     * Suite names are paths, so a suite page is addressed by the position of the suite in {@link #getSuites()}.
+     *
+     * @return the page of a suite, or null for an unknown suite
+     */
+    @CheckForNull
+    public SuiteCases getDynamic(String token, StaplerRequest req, StaplerResponse rsp) {
+        final List<SuiteResult> all = getSuites();
+        try {
+            final int index = Integer.parseInt(token);
+            return (index >= 0 && index < all.size() ? new SuiteCases(this, all.get(index)) : null);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    public synchronized SuiteResult getTotal() {
+        SuiteResult total = new SuiteResult("");
+        suites.values().forEach(total::add);
+        return total;
+    }
+
+    /**
+     * Reads the test cases of a suite from the case file.
+     * The file is streamed, so only the requested cases are held in memory.
+     */
+    public List<CaseResult> getCases(String suite) throws IOException {
+        return readCases(c -> c.getSuite().equals(suite), Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the first {@link #MAX_LISTED_FAILURES} failed test cases of all suites
+     */
+    public List<CaseResult> getFailedCases() throws IOException {
+        return readCases(c -> c.getStatus().compareTo(Status.FAILED) >= 0, MAX_LISTED_FAILURES);
+    }
+
+    /**
+     * @return whether there are more failed test cases than {@link #getFailedCases()} lists
+     */
+    public boolean isFailedCasesTruncated() {
+        final SuiteResult total = getTotal();
+        return total.getFailed() + total.getErrors() > MAX_LISTED_FAILURES;
+    }
+
+    private List<CaseResult> readCases(Predicate<CaseResult> filter, int limit) throws IOException {
+        if (run == null) {
+            return Collections.emptyList();
+        }
+        final List<CaseResult> ret = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(getCasesFile().toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while (ret.size() < limit && (line = in.readLine()) != null) {
+                CaseResult c = CaseResult.parse(line);
+                if (c != null && filter.test(c)) {
+                    ret.add(c);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            //build directory has been cleaned up
+        }
+        return ret;
+    }
+
+    private File getCasesFile() {
+        return new File(run.getRootDir(), CASES_FILENAME);
+    }
+}
@@ -0,0 +1,1079 @@
+package org.jenkinsci.plugins.qftest;
+
+import htmlpublisher.HtmlPublisher;
+import htmlpublisher.HtmlPublisherTarget;
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.Util;
+import hudson.model.Computer;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.scm.ChangeLogSet;
+import hudson.slaves.WorkspaceList;
+import hudson.util.ArgumentListBuilder;
+import jenkins.scm.RunWithSCM;
+
+import javax.annotation.CheckForNull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs a {@link QFTestConfigBuilder} step once: prepares the report directory, expands, selects and schedules
+ * the suites, runs the QF-Test calls and turns their outcome into reports and the build result.
+ *
+ * A new runner holds the state of every execution of the step. The QF-Test processes are waited for by the
+ * {@link ProcMonitor}, but the thread calling {@link #run()} still waits until all calls have finished,
+ * just like any other {@link jenkins.tasks.SimpleBuildStep}.
+ */
+class QFTestStepRunner {
+
+    private final QFTestConfigBuilder step;
+    private final Run<?, ?> run;
+    private final FilePath workspace;
+    private final Launcher launcher;
+    private final TaskListener listener;
+
+    private final long startTime = System.currentTimeMillis();
+    private final ReducedReturnValue reducedReturnValue = new ReducedReturnValue();
+    private final TimingAction timing;
+    private final TimingAction.PhaseTimer phases;
+
+    private EnvVars env;
+    private String binary;
+    private LaunchTemplate launchTemplate;
+
+    private FilePath logdir;
+    private FilePath htmldir;
+    private FilePath junitdir;
+    private FilePath qrzdir;
+
+    @CheckForNull
+    private Checkpoint checkpoint;
+    private int firstRunIndex = 0;
+
+    private SuiteHistory history = SuiteHistory.empty();
+    @CheckForNull
+    private ShardPlanAction shardPlan;
+    private final Map<String, Long> durations = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> flakiness = new ConcurrentHashMap<>();
+    private final Set<String> quarantine = new HashSet<>();
+
+    @CheckForNull
+    private QFTestDaemonPool daemonPool;
+    @CheckForNull
+    private QFTestDaemonLauncher daemonLauncher;
+    private final AtomicInteger daemonHits = new AtomicInteger();
+    private final AtomicInteger daemonMisses = new AtomicInteger();
+    private String nodeName = "";
+
+    private AdmissionControl.Limits limits;
+    private int agentCapacity;
+    private final AtomicLong admissionWait = new AtomicLong();
+    private final AtomicInteger admissionQueued = new AtomicInteger();
+
+    @CheckForNull
+    private VirtualDisplayPool displays;
+
+    @CheckForNull
+    private ResultCache cache;
+    @CheckForNull
+    private String qftestVersion;
+    private final Map<String, String> suiteDigests = new HashMap<>();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    private int nWorkers;
+    private long globalDeadline;
+    private ProgressAction progress;
+    private RunLogArchiver archiver;
+
+    private final ReportIndex reportIndex = new ReportIndex();
+    @CheckForNull
+    private ExecutorService reportWorkers;
+
+    private ThreadPoolExecutor workers;
+    private final Set<ProcMonitor.Watch> runningCalls = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean aborted = new AtomicBoolean(false);
+
+    QFTestStepRunner(QFTestConfigBuilder step, Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener) {
+        this.step = step;
+        this.run = run;
+        this.workspace = workspace;
+        this.launcher = launcher;
+        this.listener = listener;
+        this.timing = TimingAction.getOrCreate(run);
+        this.phases = new TimingAction.PhaseTimer(timing);
+    }
+
+    void run() throws InterruptedException, IOException {
+
+        env = run.getEnvironment(listener);
+
+        phases.begin("cleanup");
+        Checkpoint previous = prepareReportDirectory();
+
+        binary = step.getDescriptor().getQFTestBinary(step.getCustomPath(), launcher);
+        //compiled once, the calls of the suites only bind their arguments
+        launchTemplate = new LaunchTemplate(binary);
+
+        //EXPAND SUITES
+        phases.begin("expansion");
+        List<Suites> expandedSuites = expandSuites();
+
+        if (step.isAffectedSuitesOnly() && !expandedSuites.isEmpty()) {
+            expandedSuites = selectAffectedSuites(expandedSuites);
+            if (expandedSuites.isEmpty()) {
+                //nothing to test is not a test failure, the result of the build is left as it is
+                listener.getLogger().println("No suites are affected by the SCM changes, skipping QF-Test");
+                if (step.getShardCount() > 1 && selectShard(expandedSuites) != null) {
+                    finishWithoutSuites();
+                }
+                phases.end();
+                return;
+            }
+        }
+
+        //SCHEDULE SUITES
+        try {
+            history = SuiteHistory.load(run.getParent().getRootDir());
+        } catch (IOException ex) {
+            listener.error("Unable to load suite history: " + ex.getMessage());
+        }
+
+        if (step.getShardCount() > 1) {
+            expandedSuites = selectShard(expandedSuites);
+            if (expandedSuites == null) {
+                setResult(step.getOnTestFailure());
+                return;
+            }
+            if (expandedSuites.isEmpty()) {
+                //e.g. more shards than suites, nothing to test is not a test failure
+                listener.getLogger().println("No suites are assigned to this shard, skipping QF-Test");
+                finishWithoutSuites();
+                phases.end();
+                return;
+            }
+        }
+        if (step.getMaxParallel() > 1 && history.size() > 0) {
+            final SuiteHistory h = history;
+            expandedSuites = SuiteScheduler.longestFirst(expandedSuites, sf -> h.expectedDuration(QFTestConfigBuilder.historyKey(workspace, sf)));
+            listener.getLogger().println("Scheduling suites longest first based on the durations of previous builds");
+        }
+
+        setUpResources();
+
+        //suites completed by an interrupted attempt of the step are not run again
+        final List<Checkpoint.Call> restored = resume(previous, expandedSuites);
+        final boolean resumed = (previous != null && checkpoint == previous);
+        final List<Suites> remaining = (resumed
+                ? expandedSuites.stream().filter(sf -> !checkpoint.isCompleted(sf)).collect(Collectors.toList())
+                : expandedSuites);
+        if (resumed) {
+            listener.getLogger().println("Skipping " + (expandedSuites.size() - remaining.size()) + " suites completed before, running " + remaining.size());
+        }
+
+        setUpResultCache(remaining);
+
+        if (step.getQuarantineThreshold() > 0) {
+            for (Suites sf : expandedSuites) {
+                final String key = QFTestConfigBuilder.historyKey(workspace, sf);
+                if (history.flakyPercentage(key) >= step.getQuarantineThreshold()) {
+                    quarantine.add(key);
+                }
+            }
+            quarantine.forEach(key -> listener.getLogger().println("Quarantined flaky suite: " + key));
+        }
+
+        //the return value of a call is that of all its suites, so quarantined suites are run on their own
+        final List<SuiteBatch> batches = SuiteBatch.group(remaining, step.getSuitesPerProcess(),
+                sf -> quarantine.contains(QFTestConfigBuilder.historyKey(workspace, sf)));
+        if (batches.size() < remaining.size()) {
+            listener.getLogger().println("Running " + remaining.size() + " suites in " + batches.size() + " QF-Test calls");
+        }
+
+        //RUN SUITES
+        runCalls(expandedSuites, remaining, restored, batches);
+
+        //DETERMINE BUILD STATUS
+        setResult(step.resultFor(reducedReturnValue.get()));
+
+        if (shardPlan != null) {
+            shardPlan.setReturnValue(step.getShardIndex(), reducedReturnValue.get(), step.resultFor(reducedReturnValue.get()), step.getOnTestFailure());
+            run.save();
+        }
+
+        //CREATE REPORTS
+        phases.begin("reports");
+        createReports();
+
+        phases.begin("publishing");
+        if (step.isPublishTestResults()) {
+            try {
+                QFTestResultAction.publish(run, junitdir, listener);
+            } catch (IOException ex) {
+                Functions.printStackTrace(ex, listener.error("Unable to publish test results: " + ex.getMessage()));
+            }
+        }
+
+        //Publish HTML report, the shards of a build each publish their own
+        final String reportName = (step.getShardCount() > 1 ? "QF-Test Report (shard " + step.getShardIndex() + ")" : "QF-Test Report");
+        HtmlPublisher.publishReports(
+                run, workspace, listener, Collections.singletonList(new HtmlPublisherTarget(
+                        reportName, htmldir.getRemote(), "index.html", true, false, false
+                )), QFTestConfigBuilder.class
+        );
+        phases.end();
+
+        if (checkpoint != null) {
+            try {
+                checkpoint.finish();
+            } catch (IOException ex) {
+                listener.error("Unable to update checkpoint: " + ex.getMessage());
+            }
+        }
+        run.save();
+    }
+
+    private void setResult(String result) {
+        synchronized (run) {
+            run.setResult(Result.fromString(result));
+        }
+    }
+
+    /**
+     * Removes the output of previous builds from the report directory, unless an interrupted attempt
+     * of the step is resumed, and creates the directories for run logs and reports.
+     *
+     * @return the checkpoint of the interrupted attempt, or null
+     */
+    @CheckForNull
+    private Checkpoint prepareReportDirectory() throws IOException, InterruptedException {
+        logdir = workspace.child(step.getReportDirectory());
+
+        //picks up the calls an interrupted attempt of the step within this build or the failed previous build has completed
+        Checkpoint previous = null;
+        if (step.isResume()) {
+            final int failedBuild = previousFailedBuild();
+            FilePath stepdir = logdir;
+            if (step.reportCleanup() == QFTestConfigBuilder.ReportCleanup.PER_BUILD) {
+                stepdir = logdir.child(Integer.toString(run.getNumber()));
+                final FilePath faileddir = logdir.child(Integer.toString(failedBuild));
+                if (failedBuild >= 0 && !stepdir.exists() && Checkpoint.resume(faileddir, run.getNumber(), failedBuild) != null) {
+                    //continued in the directory of this build
+                    faileddir.renameTo(stepdir);
+                }
+            }
+            previous = Checkpoint.resume(stepdir, run.getNumber(), failedBuild);
+            if (previous != null) {
+                listener.getLogger().println("Resuming from the checkpoint in " + stepdir.getName() + ", " + previous.size() + " suites already completed");
+                logdir = stepdir;
+            }
+        }
+
+        if (previous == null) {
+            switch (step.reportCleanup()) {
+                case ROTATE:
+                    logdir = ReportDirectory.rotate(logdir, run.getNumber() + "-" + System.currentTimeMillis(), listener);
+                    break;
+                case PER_BUILD:
+                    logdir = ReportDirectory.perBuild(logdir, run.getNumber(), step.getKeepReports(), listener);
+                    break;
+                default:
+                    listener.getLogger().println("(Creating and/or clearing " + logdir.getName() + " directory");
+                    logdir.mkdirs();
+                    logdir.deleteContents();
+                    break;
+            }
+        }
+        createDirectories();
+        return previous;
+    }
+
+    /**
+     * @return the number of the previous build of the job if it has failed or been aborted, whose checkpoint may be resumed, otherwise -1
+     */
+    private int previousFailedBuild() {
+        final Run<?, ?> prev = run.getPreviousBuild();
+        if (prev == null || prev.isBuilding() || prev.getResult() == null || !prev.getResult().isWorseThan(Result.SUCCESS)) {
+            return -1;
+        }
+        return prev.getNumber();
+    }
+
+    private void createDirectories() throws IOException, InterruptedException {
+        htmldir = logdir.child("html");
+        htmldir.mkdirs();
+
+        junitdir = logdir.child("junit");
+        junitdir.mkdirs();
+
+        qrzdir = logdir.child("qrz");
+        qrzdir.mkdirs();
+    }
+
+    private List<Suites> expandSuites() {
+        final FilePath tmpdir = WorkspaceList.tempDir(workspace);
+        return step.getSuitefield().stream()
+                .peek(sf -> listener.getLogger().println(sf.toString()))
+                .map(sf -> new Suites(
+                        env.expand(sf.getSuitename()), env.expand(sf.getCustomParam())
+                ))
+                .peek(sf -> listener.getLogger().println(sf.toString()))
+                .flatMap(sf -> {
+                    try {
+                        return sf.expand(workspace, tmpdir, step.isForceRescan());
+                    } catch (java.lang.Exception ex) {
+                        Functions.printStackTrace(
+                                ex, listener.fatalError(
+                                        new StringBuilder("During expansion of").append(sf).append("\n").append(ex.getMessage()).toString()
+                                ));
+                        return Stream.<Suites>empty();
+                    }
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return why all suites have to be run in affected suites mode, or null if a selection is possible
+     */
+    @CheckForNull
+    private String fullRunReason() {
+        if (step.getFullRunEvery() > 0 && run.getNumber() % step.getFullRunEvery() == 0) {
+            return "periodic full run";
+        }
+        Run<?, ?> previous = run.getPreviousBuild();
+        if (previous == null || previous.getResult() == null || previous.getResult().isWorseThan(Result.SUCCESS)) {
+            return "previous build did not succeed";
+        }
+        if (!(run instanceof RunWithSCM)) {
+            return "no SCM information available";
+        }
+        return null;
+    }
+
+    /**
+     * Restricts the suites to those affected by the SCM changes of the build,
+     * based on the include dependencies between the suites in the workspace.
+     * The paths of the change sets are relative to the repository, they are resolved against the checkout directory.
+     */
+    private List<Suites> selectAffectedSuites(List<Suites> suites) throws IOException, InterruptedException {
+        String reason = fullRunReason();
+        final Set<String> changed = new HashSet<>();
+        if (reason == null) {
+            final String checkout = (step.getCheckoutDirectory() != null
+                    ? QFTestConfigBuilder.relativePath(workspace, workspace.child(env.expand(step.getCheckoutDirectory()))) : "");
+            for (ChangeLogSet<? extends ChangeLogSet.Entry> cs : ((RunWithSCM<?, ?>) run).getChangeSets()) {
+                for (ChangeLogSet.Entry e : cs) {
+                    for (String path : e.getAffectedPaths()) {
+                        changed.add(checkout.isEmpty() ? path : checkout + "/" + path);
+                    }
+                }
+            }
+            if (changed.isEmpty()) {
+                reason = "no SCM changes recorded";
+            }
+        }
+        if (reason != null) {
+            listener.getLogger().println("Running all suites: " + reason);
+            return suites;
+        }
+
+        final List<String> keys = suites.stream().map(sf -> QFTestConfigBuilder.historyKey(workspace, sf)).collect(Collectors.toList());
+        FilePath tmpdir = WorkspaceList.tempDir(workspace);
+        FilePath cache = (tmpdir != null ? tmpdir : workspace).child(SuiteDependencyIndex.CACHE_FILENAME);
+        SuiteDependencyIndex index = workspace.act(new SuiteDependencyIndex.Scan(new ArrayList<>(new LinkedHashSet<>(keys)), cache.getRemote()));
+
+        final Set<String> affected = index.affected(keys, changed);
+        List<Suites> ret = new ArrayList<>();
+        for (int i = 0; i < suites.size(); i++) {
+            if (affected.contains(keys.get(i))) {
+                ret.add(suites.get(i));
+            }
+        }
+        listener.getLogger().println("Running " + ret.size() + " of " + suites.size() + " suites affected by " + changed.size() + " changed files");
+        return ret;
+    }
+
+    /**
+     * @return the suites of this shard, or null if the shard configuration is invalid
+     */
+    @CheckForNull
+    private List<Suites> selectShard(List<Suites> suites) {
+        if (step.getShardIndex() >= step.getShardCount()) {
+            listener.error("Shard index " + step.getShardIndex() + " is out of range for " + step.getShardCount() + " shards");
+            return null;
+        }
+
+        //the same suite may be configured with different custom parameters, each one is planned on its own
+        final List<String> keys = suites.stream().map(this::shardKey).distinct().collect(Collectors.toList());
+
+        final ShardPlanAction plan = ShardPlanAction.getOrCreate(run, keys, history, step.getShardCount());
+        if (plan.getShardCount() != step.getShardCount()) {
+            listener.error("Shard count " + step.getShardCount() + " does not match the count " + plan.getShardCount() + " of other shards in this build");
+            return null;
+        }
+        shardPlan = plan;
+
+        //the plan is computed from the suites of the shard that expands first, all shards must expand the same suites
+        final int unknown = plan.countUnknown(keys);
+        final int missing = plan.countMissing(keys);
+        if (unknown > 0 || missing > 0) {
+            listener.error("The suites of this shard differ from those of the shard plan of this build: " + unknown
+                    + " suites are unknown to the plan and assigned by their hash, " + missing + " suites of the plan are missing");
+        }
+
+        //in the configured order
+        final List<Suites> ret = suites.stream()
+                .filter(sf -> plan.shardOf(shardKey(sf)) == step.getShardIndex())
+                .collect(Collectors.toList());
+        listener.getLogger().println("Running shard " + step.getShardIndex() + " of " + step.getShardCount() + " with " + ret.size() + " of " + suites.size() + " suites");
+        return ret;
+    }
+
+    private String shardKey(Suites sf) {
+        return ShardPlanAction.key(QFTestConfigBuilder.historyKey(workspace, sf), sf.getCustomParam());
+    }
+
+    /** Records this shard as finished without suites, so the merge step neither waits for it nor counts it as failed */
+    private void finishWithoutSuites() throws IOException {
+        shardPlan.setWithoutSuites(step.getShardIndex());
+        run.save();
+    }
+
+    /** Sets up admission control, the daemon pool and virtual displays */
+    private void setUpResources() throws IOException, InterruptedException {
+        final Computer node = workspace.toComputer();
+        nodeName = (node != null ? node.getName() : "");
+
+        //caps QF-Test processes across all builds on the agent
+        limits = step.getDescriptor().getAdmissionLimits();
+        agentCapacity = (limits.memoryPerProcess > 0
+                ? limits.capacity(launcher.getChannel().call(new AdmissionControl.PhysicalMemory()))
+                : limits.capacity(-1));
+        if (!limits.isUnlimited()) {
+            listener.getLogger().println("Admission control: "
+                    + (agentCapacity > 0 ? "up to " + agentCapacity : "unlimited") + " QF-Test processes on this agent, "
+                    + (limits.licenseSeats > 0 ? limits.licenseSeats : "unlimited") + " license seats");
+        }
+
+        if (step.getDaemonPoolSize() > 0 && limits.licenseSeats > 0) {
+            //idle daemons hold a license, but only running calls are counted against the seats
+            listener.getLogger().println("QF-Test daemons are not used together with a limit of license seats, running a fresh QF-Test process per call");
+        } else if (step.getDaemonPoolSize() > 0) {
+            //daemons keep the working directory and environment they were launched with, so they are not shared between jobs
+            daemonPool = QFTestDaemonPool.forKey(String.join("|", nodeName, binary, run.getParent().getFullName(), workspace.getRemote()));
+            daemonLauncher = new QFTestDaemonLauncher(launcher, binary, workspace, env);
+            listener.getLogger().println("Running suites on a pool of up to " + step.getDaemonPoolSize() + " QF-Test daemons");
+        }
+
+        if (step.isVirtualDisplays() && !launcher.isUnix()) {
+            listener.getLogger().println("Virtual displays are only available on Unix agents, running on the display of the agent");
+        } else if (step.isVirtualDisplays() && daemonPool != null) {
+            listener.getLogger().println("Virtual displays are not used with QF-Test daemons, which keep the display they were started on");
+        } else if (step.isVirtualDisplays()) {
+            displays = new VirtualDisplayPool(launcher, workspace, env, step.getVirtualDisplayScreen());
+            listener.getLogger().println("Running each QF-Test call on a virtual display (Xvfb) of its own");
+        }
+    }
+
+    /**
+     * Sets up the checkpoint of the step.
+     *
+     * @param previous the checkpoint of an interrupted attempt of the step, or null
+     * @return the calls completed by the interrupted attempt
+     */
+    private List<Checkpoint.Call> resume(@CheckForNull Checkpoint previous, List<Suites> suites) throws IOException, InterruptedException {
+        final String fingerprint = Checkpoint.fingerprint(suites);
+        if (previous != null && !previous.isFor(fingerprint)) {
+            listener.getLogger().println("The checkpoint was recorded for other suites, running all suites afresh");
+            previous = null;
+            logdir.deleteContents();
+            createDirectories();
+        }
+        if (previous == null) {
+            checkpoint = (step.isResume() ? Checkpoint.create(logdir, run.getNumber(), fingerprint) : null);
+            return Collections.emptyList();
+        }
+        checkpoint = previous;
+        checkpoint.discardIncomplete(qrzdir, htmldir, junitdir, step.isIncrementalReports());
+        firstRunIndex = checkpoint.nextRunIndex();
+        return checkpoint.getCalls(suites);
+    }
+
+    /**
+     * Computes the content addressed keys of the suites, over their includes, resources and the SUT artifacts
+     */
+    private void setUpResultCache(List<Suites> remaining) throws IOException, InterruptedException {
+        if (!step.isResultCache()) {
+            return;
+        }
+        final String sut = (step.getSutArtifacts() != null ? Util.fixEmptyAndTrim(env.expand(step.getSutArtifacts())) : null);
+        if (sut == null) {
+            listener.error("Not using the result cache: no SUT artifacts are configured, a changed SUT would replay outdated results");
+            return;
+        }
+        qftestVersion = qftestVersion();
+        if (qftestVersion == null) {
+            listener.error("Not using the result cache: unable to determine the QF-Test version");
+            return;
+        }
+        cache = step.getDescriptor().getResultCache();
+        if (!remaining.isEmpty()) {
+            final List<String> keys = remaining.stream().map(sf -> QFTestConfigBuilder.historyKey(workspace, sf)).distinct().collect(Collectors.toList());
+            final FilePath tmpdir = WorkspaceList.tempDir(workspace);
+            final FilePath depCache = (tmpdir != null ? tmpdir : workspace).child(SuiteDependencyIndex.CACHE_FILENAME);
+            suiteDigests.putAll(workspace.act(new ResultCache.Digests(keys, sut, depCache.getRemote(),
+                    Collections.singletonList(QFTestConfigBuilder.relativePath(workspace, workspace.child(step.getReportDirectory()))))));
+        }
+    }
+
+    /**
+     * @return the version output of the QF-Test binary, or null if it cannot be determined
+     */
+    @CheckForNull
+    private String qftestVersion() throws InterruptedException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            final int ret = launcher.launch().cmds(binary, "-batch", "-version").stdout(out).pwd(workspace).envs(env).quiet(true).join();
+            final String version = out.toString().trim();
+            return (ret == 0 && !version.isEmpty() ? version : null);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private Proc startQFTestProc(List<String> args, OutputStream out, EnvVars envs) throws IOException {
+        return launcher.new ProcStarter()
+                .cmds(args)
+                .stdout(out)
+                .pwd(workspace)
+                .envs(envs)
+                .start();
+    }
+
+    /**
+     * Runs the batches of suites on up to {@link QFTestConfigBuilder#getMaxParallel()} QF-Test processes at a time
+     * and waits for them, applying the abort policy. Afterwards, the resources of the calls are released
+     * and the run logs are archived.
+     */
+    private void runCalls(List<Suites> expandedSuites, List<Suites> remaining, List<Checkpoint.Call> restored, List<SuiteBatch> batches) throws IOException, InterruptedException {
+        nWorkers = Math.max(1, Math.min(step.getMaxParallel(), batches.size()));
+        if (nWorkers > 1) {
+            listener.getLogger().println("Running " + batches.size() + " suite configurations on " + nWorkers + " parallel QF-Test processes");
+        }
+
+        globalDeadline = (step.getGlobalTimeout() > 0 ? startTime + TimeUnit.MINUTES.toMillis(step.getGlobalTimeout()) : 0);
+
+        progress = new ProgressAction(expandedSuites.size(), nWorkers, expandedSuites.stream()
+                .mapToLong(sf -> Math.max(0, history.expectedDuration(QFTestConfigBuilder.historyKey(workspace, sf))))
+                .sum()
+        );
+        progress.suitesDone(expandedSuites.size() - remaining.size());
+        synchronized (run) {
+            run.addAction(progress);
+        }
+
+        final String artifactPrefix = (step.getShardCount() > 1 ? "shard-" + step.getShardIndex() + "/" : "");
+        archiver = new RunLogArchiver(run, qrzdir, launcher, listener, artifactPrefix);
+
+        //creates the report of a single QF-Test call (including its retries) while later calls are still running
+        reportWorkers = (step.isIncrementalReports() ? Executors.newSingleThreadExecutor() : null);
+
+        //the calls completed before only contribute their return value and, if still missing, their report
+        for (Checkpoint.Call call : restored) {
+            reducedReturnValue.add(call.returnValue);
+            if (reportWorkers != null) {
+                if (htmldir.child(call.runId).child("report.html").exists()) {
+                    reportIndex.add(call.runId, call.suites, call.returnValue);
+                } else {
+                    submitReport(call);
+                }
+            }
+        }
+
+        //threads prepare, launch and evaluate the QF-Test calls, none is held while a QF-Test process is running
+        workers = new ThreadPoolExecutor(nWorkers, nWorkers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        workers.allowCoreThreadTimeOut(true);
+
+        boolean runCompleted = false;
+        phases.begin("execution");
+        final BlockingQueue<Optional<Integer>> results = new LinkedBlockingQueue<>();
+        int started = 0;
+        int inFlight = 0;
+        try {
+            final Result worstResult = step.getWorstMappedResult();
+            int nErrors = 0;
+            String abortReason = null;
+            for (int done = 0; done < batches.size(); done++) {
+                //at most nWorkers batches at a time, none after an abort
+                while (abortReason == null && started < batches.size() && inFlight < nWorkers) {
+                    final int i = started++;
+                    inFlight++;
+                    runBatch(batches.get(i), String.format("%04d", firstRunIndex + i))
+                            .whenComplete((ret, failure) -> results.add(Optional.ofNullable(ret)));
+                }
+                if (inFlight == 0) {
+                    break;
+                }
+                final Integer ret = results.take().orElse(null);
+                inFlight--;
+                if (ret == null || abortReason != null) {
+                    continue;
+                }
+                if (batches.size() > 1) {
+                    listener.getLogger().println("Progress: " + progress.getSuitesDone() + " of " + progress.getSuitesTotal() + " suites done, "
+                            + (progress.isTestCasesSeen() ? progress.getPassed() + " test cases passed, " + progress.getFailed() + " failed, " + progress.getErrors() + " errors, " : "")
+                            + "estimated time remaining: " + progress.getEta());
+                }
+
+                if (ret != 0 && ret != 1) {
+                    nErrors++;
+                }
+                switch (step.abortPolicy()) {
+                    case FIRST_FAILURE:
+                        if (Result.fromString(step.resultFor((char) ret.intValue())).isWorseThan(Result.SUCCESS)) {
+                            abortReason = "QF-Test call finished with return value " + ret;
+                        }
+                        break;
+                    case MAX_ERRORS:
+                        if (nErrors >= step.getMaxErrors()) {
+                            abortReason = nErrors + " QF-Test calls finished with errors";
+                        }
+                        break;
+                    case WORST_RESULT:
+                        if (!Result.fromString(step.resultFor(reducedReturnValue.get())).isBetterThan(worstResult)) {
+                            abortReason = "build result cannot get any worse than " + worstResult;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                if (abortReason != null) {
+                    listener.getLogger().println("Aborting remaining suites: " + abortReason);
+                    aborted.set(true);
+                    runningCalls.forEach(ProcMonitor.Watch::kill);
+                }
+            }
+            runCompleted = true;
+        } finally {
+            //kills all running QF-Test processes if we got interrupted, and lets the calls release their resources
+            aborted.set(true);
+            runningCalls.forEach(ProcMonitor.Watch::kill);
+            final boolean interrupted = Thread.interrupted();
+            try {
+                final long deadline = System.currentTimeMillis() + ProcMonitor.CANCEL_TIMEOUT;
+                while (inFlight > 0 && results.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS) != null) {
+                    inFlight--;
+                }
+            } catch (InterruptedException ex) {
+                //stop waiting
+            } finally {
+                workers.shutdownNow();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            progress.finish();
+            if (reportWorkers != null && !runCompleted) {
+                reportWorkers.shutdownNow();
+            }
+
+            if (daemonPool != null) {
+                listener.getLogger().println("QF-Test daemon pool: " + daemonHits.get() + " hits, " + daemonMisses.get() + " misses, about "
+                        + (daemonHits.get() * daemonPool.getAverageLaunchMillis() / 1000) + "s of daemon launch time saved");
+            }
+
+            if (cache != null) {
+                listener.getLogger().println("Result cache: " + cacheHits.get() + " of " + batches.size() + " QF-Test calls replayed");
+            }
+
+            if (admissionQueued.get() > 0) {
+                listener.getLogger().println("Admission control: " + admissionQueued.get() + " QF-Test calls queued for "
+                        + Util.getTimeSpanString(admissionWait.get()) + " in total");
+            }
+
+            if (displays != null) {
+                try {
+                    displays.close();
+                } catch (IOException ex) {
+                    listener.error("Unable to stop virtual displays: " + ex.getMessage());
+                }
+            }
+
+            //PICKUP ARTIFACTS
+            phases.begin("archiving");
+            try {
+                archiver.finish();
+            } catch (IOException ex) {
+                Functions.printStackTrace(ex, listener.error("Unable to archive run logs: " + ex.getMessage()));
+            }
+            phases.end();
+            timing.addSuites(durations);
+
+            try {
+                SuiteHistory.update(run.getParent().getRootDir(), durations, flakiness, run.getNumber());
+            } catch (IOException ex) {
+                listener.error("Unable to update suite history: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Launches a batch once, each attempt gets an isolated run log directory.
+     *
+     * @return completed by the process monitor once the QF-Test process has finished
+     */
+    private CompletableFuture<Integer> startBatch(SuiteBatch batch, String runId) throws java.lang.Exception {
+        final CallResources resources = new CallResources(daemonPool, displays);
+        OutputStream out = null;
+        try {
+            FilePath runlogdir = qrzdir.child(runId);
+            runlogdir.mkdirs();
+
+            if (!limits.isUnlimited()) {
+                resources.ticket = AdmissionControl.get().admit(nodeName, agentCapacity, limits.licenseSeats, aborted::get);
+                final long waited = resources.ticket.getWaited();
+                if (waited >= 1000) {
+                    admissionQueued.incrementAndGet();
+                    admissionWait.addAndGet(waited);
+                    timing.addAdmissionWait(waited);
+                    listener.getLogger().println("  [" + runId + "] Waited " + Util.getTimeSpanString(waited) + " for admission");
+                }
+            }
+            if (daemonPool != null) {
+                resources.lease = daemonPool.acquire(daemonLauncher, step.getDaemonPoolSize());
+                (resources.lease.hit ? daemonHits : daemonMisses).incrementAndGet();
+            }
+            if (displays != null) {
+                resources.display = displays.acquire();
+                if (nWorkers > 1) {
+                    listener.getLogger().println("  [" + runId + "] Display " + resources.display);
+                }
+            }
+            if (aborted.get()) {
+                throw new CancellationException();
+            }
+
+            final Integer daemonPort = (resources.lease != null ? resources.lease.daemon.getPort() : null);
+            final List<String> args;
+            if (batch.needsSuitesfile(launcher.isUnix())) {
+                FilePath suitesfile = runlogdir.child("suites.txt");
+                suitesfile.write(String.join("\n", batch.getPaths()) + "\n", "UTF-8");
+                args = launchTemplate.run(runlogdir.getRemote(), daemonPort, batch.getCustomParam(),
+                        Arrays.asList("-suitesfile", suitesfile.getRemote()));
+            } else {
+                args = launchTemplate.run(runlogdir.getRemote(), daemonPort, batch.getCustomParam(), batch.getPaths());
+            }
+            if (batch.size() > 1) {
+                listener.getLogger().println("  [" + runId + "] " + batch + ": " + String.join(", ", batch.getPaths()));
+            }
+
+            final long started = System.currentTimeMillis();
+            final ProcWatchdog watchdog = new ProcWatchdog(
+                    TimeUnit.MINUTES.toMillis(step.getSuiteTimeout()), globalDeadline, TimeUnit.MINUTES.toMillis(step.getIdleTimeout())
+            );
+            out = new PrefixingOutputStream(listener.getLogger(), nWorkers > 1 ? "[" + runId + "] " : "", run.getCharset(), progress::line);
+            final ProcWatchdog.ActivityOutputStream activity = new ProcWatchdog.ActivityOutputStream(out);
+            final VirtualDisplayPool.Display display = resources.display;
+            final long launchStarted = System.currentTimeMillis();
+            final Proc proc = startQFTestProc(args, activity, display == null ? env : display.environment(env));
+            timing.addCall(System.currentTimeMillis() - launchStarted);
+
+            final ProcMonitor.Watch watch = ProcMonitor.get().watch(proc, watchdog, activity, runlogdir);
+            runningCalls.add(watch);
+            if (aborted.get()) {
+                watch.kill();
+            }
+            final OutputStream callOut = out;
+            out = null;
+            return watch.getResult().whenComplete((ret, failure) -> {
+                //right away on the poller thread of the process, so admission and daemons are freed even if the build is gone
+                runningCalls.remove(watch);
+                try {
+                    activity.close();
+                    callOut.close();
+                } catch (IOException ex) {
+                    //output of the process is incomplete, its return value still counts
+                }
+                resources.release(ret != null && ret >= 0 && ret <= 3, watchdog.getTimeout() == null, listener);
+            }).thenApplyAsync(ret -> {
+                if (watchdog.getTimeout() != null) {
+                    listener.error("[" + runId + "] QF-Test process killed: " + watchdog.getTimeout());
+                }
+                if (ret >= 0 && ret <= 3) {
+                    //members of a batch share its duration evenly, an estimate only good enough for scheduling
+                    final long duration = (System.currentTimeMillis() - started) / batch.size();
+                    batch.getSuites().forEach(sf -> durations.put(QFTestConfigBuilder.historyKey(workspace, sf), duration));
+                }
+                listener.getLogger().println("  [" + runId + "] Finished with return value: " + ret);
+                archiver.archive(runId);
+                return ret;
+            }, workers);
+        } catch (java.lang.Exception ex) {
+            resources.release(false, true, listener);
+            if (out != null) {
+                out.close();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Runs the attempts of a batch one after the other and evaluates them.
+     *
+     * @return completes with the return value of the batch, or null if it got cancelled
+     */
+    private CompletableFuture<Integer> runBatch(SuiteBatch batch, String runId) {
+        final String cacheKey = (cache != null ? ResultCache.key(qftestVersion, batch.getCustomParam(), batch.getSuites().stream()
+                .map(sf -> suiteDigests.get(QFTestConfigBuilder.historyKey(workspace, sf)))
+                .collect(Collectors.toList())) : null);
+        CompletableFuture<BatchAttempts> chain = CompletableFuture.completedFuture(new BatchAttempts());
+        for (int attempt = 0; attempt <= step.getRetries(); attempt++) {
+            final int n = attempt;
+            final String attemptId = (attempt == 0 ? runId : runId + "-retry" + attempt);
+            chain = chain.thenComposeAsync(attempts -> {
+                if (attempts.isStopped() || aborted.get()) {
+                    return CompletableFuture.completedFuture(attempts);
+                }
+                if (globalDeadline > 0 && System.currentTimeMillis() > globalDeadline) {
+                    listener.getLogger().println("  [" + attemptId + "] Skipped: " + ProcWatchdog.Timeout.GLOBAL);
+                    attempts.stop();
+                    return CompletableFuture.completedFuture(attempts);
+                }
+                if (n > 0) {
+                    listener.getLogger().println("  [" + attemptId + "] Retrying " + batch + " after return value " + attempts.getBest());
+                }
+
+                if (n == 0 && cacheKey != null && replay(cacheKey, batch, attemptId, attempts)) {
+                    return CompletableFuture.completedFuture(attempts);
+                }
+
+                attempts.started(attemptId);
+                try {
+                    return startBatch(batch, attemptId).thenApply(ret -> {
+                        attempts.finished(ret);
+                        if (!step.needsRetry(attempts.getBest())) {
+                            attempts.stop();
+                        }
+                        return attempts;
+                    });
+                } catch (java.lang.Exception ex) {
+                    CompletableFuture<BatchAttempts> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(ex);
+                    return failed;
+                }
+            }, workers);
+        }
+
+        return chain.handle((attempts, failure) -> {
+            final Throwable cause = (failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            if (aborted.get() || cause instanceof InterruptedException || cause instanceof CancellationException) {
+                listener.getLogger().println("  [" + runId + "] Cancelled");
+                return null;
+            }
+            if (cause != null) {
+                listener.error(cause.getMessage());
+                setResult(step.getOnTestFailure());
+                Functions.printStackTrace(cause, listener.fatalError(cause.getMessage()));
+                return -1;
+            }
+            return evaluate(batch, runId, cacheKey, attempts);
+        });
+    }
+
+    /**
+     * Copies the cached run logs of a batch instead of running it.
+     *
+     * @return whether the batch has been replayed from the cache
+     */
+    private boolean replay(String cacheKey, SuiteBatch batch, String attemptId, BatchAttempts attempts) {
+        final ResultCache.Entry hit = cache.lookup(cacheKey);
+        if (hit == null) {
+            return false;
+        }
+        try {
+            hit.runlogs.copyRecursiveTo(qrzdir.child(attemptId));
+            listener.getLogger().println("  [" + attemptId + "] Replayed cached return value " + hit.returnValue + " of " + batch);
+            cacheHits.incrementAndGet();
+            attempts.started(attemptId);
+            attempts.finished(hit.returnValue);
+            attempts.replayed();
+            attempts.stop();
+            archiver.archive(attemptId);
+            return true;
+        } catch (java.lang.Exception ex) {
+            listener.error("[" + attemptId + "] Unable to replay cached result, running QF-Test: " + ex.getMessage());
+            try {
+                qrzdir.child(attemptId).deleteRecursive();
+            } catch (java.lang.Exception ex2) {
+                //the run logs of the call are written to the same directory anyway
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records the outcome of the attempts of a batch in the cache, the suite history, the checkpoint and the reports.
+     *
+     * @return the return value the batch contributes to the result of the step, or null if it has not been run
+     */
+    @CheckForNull
+    private Integer evaluate(SuiteBatch batch, String runId, @CheckForNull String cacheKey, BatchAttempts attempts) {
+        final Integer first = attempts.getFirst();
+        final Integer best = attempts.getBest();
+        if (best == null) {
+            return null;
+        }
+        progress.suitesDone(batch.size());
+
+        //only outcomes accepted without a retry are cached, failures are always run again
+        if (cacheKey != null && !attempts.isReplayed() && !step.needsRetry(first)) {
+            try {
+                cache.store(cacheKey, first, qrzdir.child(runId));
+            } catch (java.lang.Exception ex) {
+                listener.error("[" + runId + "] Unable to store result in cache: " + ex.getMessage());
+            }
+        }
+
+        //only conclusive outcomes of QF-Test runs of a single suite count towards the flakiness statistics,
+        //the return value of a batch does not tell which of its suites failed
+        if (batch.size() == 1 && !attempts.isReplayed() && (!step.needsRetry(first) || step.getRetries() > 0)) {
+            final boolean flaky = step.needsRetry(first) && !step.needsRetry(best);
+            flakiness.put(QFTestConfigBuilder.historyKey(workspace, batch.getSuites().get(0)), flaky);
+        }
+
+        int ret = best;
+        if (ret != 0 && batch.size() == 1 && quarantine.contains(QFTestConfigBuilder.historyKey(workspace, batch.getSuites().get(0)))) {
+            listener.getLogger().println("  [" + runId + "] Ignoring return value " + ret + " of quarantined suites");
+            ret = 1;
+        }
+        reducedReturnValue.add(ret);
+
+        final Checkpoint.Call call = new Checkpoint.Call(runId, attempts.getIds(), batch.getPaths(), ret);
+        if (checkpoint != null) {
+            try {
+                checkpoint.record(call, batch.getSuites());
+            } catch (java.lang.Exception ex) {
+                listener.error("Unable to update checkpoint: " + ex.getMessage());
+            }
+        }
+        if (reportWorkers != null) {
+            submitReport(call);
+        }
+        return ret;
+    }
+
+    /**
+     * Creates the report of a single QF-Test call (including its retries)
+     *
+     * @return the return value of QF-Test, or null if the call has no run logs
+     */
+    @CheckForNull
+    private Integer genBatchReport(String runId, List<String> attemptIds) throws IOException, InterruptedException {
+        List<String> runlogs = new ArrayList<>();
+        for (String id : attemptIds) {
+            for (FilePath fp : qrzdir.child(id).list("**/*.q??")) {
+                runlogs.add(fp.getRemote());
+            }
+        }
+        if (runlogs.isEmpty()) {
+            return null;
+        }
+
+        List<String> args = launchTemplate.genReport(qrzdir.child(runId).getRemote(), Arrays.asList(
+                "-report.html", htmldir.child(runId).getRemote(), "-report.junit", junitdir.child(runId).getRemote()
+        ), runlogs);
+        try (OutputStream out = new PrefixingOutputStream(listener.getLogger(), "[" + runId + " report] ", run.getCharset())) {
+            return startQFTestProc(args, out, env).join();
+        }
+    }
+
+    private void submitReport(Checkpoint.Call call) {
+        reportWorkers.submit(() -> {
+            try {
+                if (genBatchReport(call.runId, call.attemptIds) != null) {
+                    reportIndex.add(call.runId, call.suites, call.returnValue);
+                }
+            } catch (InterruptedException ex) {
+                //build got interrupted
+            } catch (IOException ex) {
+                Functions.printStackTrace(ex, listener.error("Unable to create report for " + call.runId + ": " + ex.getMessage()));
+            }
+        });
+    }
+
+    private void createReports() throws IOException, InterruptedException {
+        listener.getLogger().println("Creating reports");
+
+        if (reportWorkers != null) {
+            try {
+                reportWorkers.shutdown();
+                reportWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } finally {
+                reportWorkers.shutdownNow();
+            }
+
+            //only the overview is left to do, the reports of the calls are done
+            if (reportIndex.size() > 0) {
+                htmldir.child("index.html").write(reportIndex.toHtml(), "UTF-8");
+            } else {
+                listener.getLogger().println("No reports found. Marking run with `test failure'");
+                setResult(step.getOnTestFailure());
+            }
+        } else {
+            try {
+
+                QFTestCommandLineBuilder args = new QFTestCommandLineBuilder(binary, QFTestCommandLineBuilder.RunMode.GENREPORT);
+                args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-batch");
+                args.presetArg(QFTestCommandLineBuilder.PresetType.ENFORCE, "-runlogdir", qrzdir.getRemote());
+
+                RunLogs rl = new RunLogs(
+                        new ArgumentListBuilder(
+                                "-report.html", htmldir.getRemote(), "-report.junit", junitdir.getRemote()
+                        ).toStringWithQuote()
+                );
+
+                int nReports = args.addSuiteConfig(qrzdir, rl);
+                if (nReports > 0) {
+                    startQFTestProc(args.toList(), listener.getLogger(), env).join();
+                    htmldir.child("report.html").renameTo(htmldir.child("index.html"));
+                } else {
+                    listener.getLogger().println("No reports found. Marking run with `test failure'");
+                    setResult(step.getOnTestFailure());
+                }
+            } catch (java.lang.Exception ex) {
+                setResult(step.getOnTestFailure());
+                Functions.printStackTrace(ex, listener.fatalError(ex.getMessage()));
+            }
+        }
+    }
+}
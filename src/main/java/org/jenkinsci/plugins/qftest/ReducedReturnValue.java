@@ -0,0 +1,43 @@
+package org.jenkinsci.plugins.qftest;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * Thread-safe accumulator for the QF-Test return values of all
+ * processes spawned during one build step execution.
+ *
+ * The first value outside the range 0..3 (i.e. an unrecoverable failure)
+ * sticks, otherwise the most severe value wins.
+ */
+class ReducedReturnValue {
+
+    @CheckForNull
+    private Character value;
+
+    public synchronized char add(int ret) {
+        final char cRet = (char) ret;
+        if (    (value == null) ||
+                (value <= 3 && cRet > value) //only update to first non-negative return value
+        ) {
+            value = cRet;
+        }
+        return value.charValue();
+    }
+
+    public synchronized @CheckForNull Character get() {
+        return value;
+    }
+
+    /**
+     * @return the better of two return values of attempts to run the same suites,
+     * where any value in the range 0..3 beats an unrecoverable failure
+     */
+    static int best(int a, int b) {
+        final boolean aValid = (a >= 0 && a <= 3);
+        final boolean bValid = (b >= 0 && b <= 3);
+        if (aValid != bValid) {
+            return (aValid ? a : b);
+        }
+        return (aValid ? Math.min(a, b) : a);
+    }
+}
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.MasterToSlaveFileCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Prepares the report directory of a build step without deleting the output of previous builds on the critical path.
+ */
+class ReportDirectory {
+
+    private static final Logger LOGGER = Logger.getLogger(ReportDirectory.class.getName());
+
+    /** Suffix of report directories moved aside, followed by a unique id */
+    static final String ROTATED_SUFFIX = ".old-";
+
+    private ReportDirectory() {
+    }
+
+    /**
+     * Moves the report directory aside by a rename and deletes it, together with leftovers of
+     * earlier rotations, in the background on the agent.
+     *
+     * @return the new, empty report directory
+     */
+    static FilePath rotate(FilePath logdir, String uniqueId, TaskListener listener) throws IOException, InterruptedException {
+        final FilePath parent = logdir.getParent();
+        if (logdir.exists() && parent != null) {
+            final FilePath rotated = parent.child(logdir.getName() + ROTATED_SUFFIX + uniqueId);
+            listener.getLogger().println("(Moving " + logdir.getName() + " directory aside to " + rotated.getName());
+            logdir.renameTo(rotated);
+        }
+        logdir.mkdirs();
+
+        if (parent != null) {
+            final List<String> trash = new ArrayList<>();
+            for (FilePath fp : parent.listDirectories()) {
+                if (fp.getName().startsWith(logdir.getName() + ROTATED_SUFFIX)) {
+                    trash.add(fp.getRemote());
+                }
+            }
+            report(parent.act(new DeleteInBackground(trash)), listener);
+        }
+        return logdir;
+    }
+
+    /**
+     * Creates a subdirectory of the report directory for the current build and deletes those of
+     * older builds in the background on the agent, so only the given number of builds is retained.
+     *
+     * @return the empty subdirectory for the current build
+     */
+    static FilePath perBuild(FilePath logdir, int buildNumber, int retained, TaskListener listener) throws IOException, InterruptedException {
+        final FilePath builddir = logdir.child(Integer.toString(buildNumber));
+        if (builddir.exists()) {
+            //rebuilt after a number got reused, e.g. after the job has been recreated
+            rotate(builddir, Long.toString(System.currentTimeMillis()), listener);
+        }
+        builddir.mkdirs();
+
+        final TreeMap<Integer, FilePath> builds = new TreeMap<>();
+        for (FilePath fp : logdir.listDirectories()) {
+            try {
+                builds.put(Integer.parseInt(fp.getName()), fp);
+            } catch (NumberFormatException ex) {
+                //not a build directory
+            }
+        }
+        final List<String> outdated = new ArrayList<>();
+        while (builds.size() > Math.max(1, retained)) {
+            outdated.add(builds.pollFirstEntry().getValue().getRemote());
+        }
+        if (!outdated.isEmpty()) {
+            listener.getLogger().println("(Deleting report directories of " + outdated.size() + " older builds in the background");
+            report(logdir.act(new DeleteInBackground(outdated)), listener);
+        }
+        return builddir;
+    }
+
+    private static void report(DeleteInBackground.Status status, TaskListener listener) {
+        if (status.pending > 0) {
+            listener.getLogger().println("(Still deleting " + status.pending + " report directories of earlier builds in the background");
+        }
+        for (String failure : status.failures) {
+            listener.getLogger().println("Unable to delete report directory of an earlier build, retrying: " + failure);
+        }
+    }
+
+    /**
+     * Deletes directories on the agent in the background and returns immediately.
+     *
+     * All deletions of an agent share one thread, so they do not compete with each other for the disk.
+     * A directory which is still queued or being deleted is not queued again. Failed deletions are
+     * reported to the next build step asking for a deletion and retried by it.
+     */
+    static class DeleteInBackground extends MasterToSlaveFileCallable<DeleteInBackground.Status> {
+        private static final long serialVersionUID = 1L;
+
+        private static final ExecutorService deleter = Executors.newSingleThreadExecutor(
+                new NamingThreadFactory(new DaemonThreadFactory(), "QF-Test report directory cleanup")
+        );
+
+        /** Directories queued or being deleted */
+        private static final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+        /** Directories whose deletion failed, with the reason */
+        private static final Map<String, String> failed = new ConcurrentHashMap<>();
+
+        /** Deletions left over from earlier requests, reported in the build log */
+        static class Status implements Serializable {
+            private static final long serialVersionUID = 1L;
+
+            /** Number of directories of earlier requests still queued or being deleted */
+            final int pending;
+            /** Failed deletions of earlier requests */
+            final ArrayList<String> failures;
+
+            Status(int pending, ArrayList<String> failures) {
+                this.pending = pending;
+                this.failures = failures;
+            }
+        }
+
+        private final List<String> dirs;
+
+        DeleteInBackground(List<String> dirs) {
+            this.dirs = dirs;
+        }
+
+        @Override
+        public Status invoke(File base, VirtualChannel channel) {
+            final ArrayList<String> failures = new ArrayList<>();
+            for (String dir : new ArrayList<>(failed.keySet())) {
+                final String reason = failed.remove(dir);
+                if (reason != null) {
+                    failures.add(dir + ": " + reason);
+                }
+            }
+            final int earlier = pending.size();
+            for (String dir : dirs) {
+                if (pending.add(dir)) {
+                    deleter.execute(() -> delete(dir));
+                }
+            }
+            return new Status(earlier, failures);
+        }
+
+        private static void delete(String dir) {
+            try {
+                Util.deleteRecursive(new File(dir));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Unable to delete " + dir, ex);
+                failed.put(dir, String.valueOf(ex.getMessage()));
+            } finally {
+                pending.remove(dir);
+            }
+        }
+    }
+}
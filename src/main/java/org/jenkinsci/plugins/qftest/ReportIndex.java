@@ -0,0 +1,54 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Overview page linking the reports generated separately for every QF-Test call,
+ * which replaces a single report covering all run logs when reports are created incrementally.
+ */
+class ReportIndex {
+
+    private static class Row {
+        final List<String> suites;
+        final int returnValue;
+
+        Row(List<String> suites, int returnValue) {
+            this.suites = suites;
+            this.returnValue = returnValue;
+        }
+    }
+
+    /** keyed on run id, which sorts in the order of the QF-Test calls */
+    private final Map<String, Row> rows = new TreeMap<>();
+
+    synchronized void add(String runId, List<String> suites, int returnValue) {
+        rows.put(runId, new Row(suites, returnValue));
+    }
+
+    synchronized int size() {
+        return rows.size();
+    }
+
+    /**
+     * @return the overview page, which expects the report of each call in the subdirectory named after its run id
+     */
+    synchronized String toHtml() {
+        StringBuilder sb = new StringBuilder()
+                .append("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>QF-Test Report</title></head><body>\n")
+                .append("<h1>QF-Test Report</h1>\n<table border=\"1\" cellpadding=\"4\">\n")
+                .append("<tr><th>Call</th><th>Suites</th><th>Return value</th></tr>\n");
+        rows.forEach((runId, row) -> {
+            sb.append("<tr><td><a href=\"").append(Util.rawEncode(runId)).append("/report.html\">")
+                    .append(Util.escape(runId)).append("</a></td><td>");
+            for (String suite : row.suites) {
+                sb.append(Util.escape(suite)).append("<br>");
+            }
+            sb.append("</td><td>").append(row.returnValue).append("</td></tr>\n");
+        });
+        return sb.append("</table>\n</body></html>\n").toString();
+    }
+}
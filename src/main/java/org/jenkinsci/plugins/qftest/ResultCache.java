@@ -0,0 +1,344 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content addressed cache of the outcome of QF-Test calls, in a directory on the controller shared by all jobs.
+ *
+ * A call is keyed on everything it depends on: the QF-Test version, its custom parameters, the contents of its suites,
+ * of the suites they include and of the other files in their directories, and the contents of the SUT artifacts. On a hit, the cached run logs are copied to
+ * the run log directory of the call instead of launching QF-Test. Entries expire after a TTL, and the least recently
+ * used ones are evicted once the cache exceeds its size.
+ *
+ * Each entry is a directory named after its key, with the run logs in <tt>qrz</tt> and a file {@link #ENTRY_FILENAME}
+ * holding: return value TAB creation time TAB size of the run logs. The modification time of the directory is the
+ * time of the last use.
+ */
+class ResultCache {
+
+    static final String ENTRY_FILENAME = "result.tsv";
+
+    private static final String TMP_INFIX = ".tmp-";
+
+    /** Leftovers of interrupted stores older than this are deleted */
+    private static final long TMP_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    /** A cached outcome */
+    static class Entry {
+        final int returnValue;
+        final FilePath runlogs;
+
+        Entry(int returnValue, FilePath runlogs) {
+            this.returnValue = returnValue;
+            this.runlogs = runlogs;
+        }
+    }
+
+    private final File dir;
+    private final long ttl;
+    private final long maxSize;
+
+    /**
+     * @param dir directory of the cache on the controller
+     * @param ttl time in ms an entry is valid after it has been stored, 0 for unlimited
+     * @param maxSize size in bytes the run logs of all entries are kept below, 0 for unlimited
+     */
+    ResultCache(File dir, long ttl, long maxSize) {
+        this.dir = dir;
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param version the version output of QF-Test
+     * @param customParam the custom parameters of the call
+     * @param digests the digests of the suites of the call, see {@link Digests}
+     * @return the key of a QF-Test call
+     */
+    static String key(String version, String customParam, List<String> digests) {
+        final StringBuilder sb = new StringBuilder(version).append('\n').append(customParam).append('\n');
+        digests.forEach(d -> sb.append(d).append('\n'));
+        return toHex(sha256().digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return the cached outcome, or null if there is none or it has expired
+     */
+    @CheckForNull
+    Entry lookup(String key) {
+        synchronized (lockFor(dir)) {
+            final File entry = new File(dir, key);
+            final long[] info = readInfo(entry);
+            if (info == null) {
+                return null;
+            }
+            final long now = System.currentTimeMillis();
+            if (ttl > 0 && now - info[1] > ttl) {
+                delete(entry);
+                return null;
+            }
+            entry.setLastModified(now);
+            return new Entry((int) info[0], new FilePath(new File(entry, "qrz")));
+        }
+    }
+
+    /**
+     * Copies the run logs of a QF-Test call into the cache and evicts entries exceeding the limits.
+     *
+     * @param runlogdir run log directory of the call
+     */
+    void store(String key, int returnValue, FilePath runlogdir) throws IOException, InterruptedException {
+        dir.mkdirs();
+        final File tmp = new File(dir, key + TMP_INFIX + UUID.randomUUID());
+        try {
+            //copied outside the lock, it may take a while for large run logs
+            runlogdir.copyRecursiveTo(RunLogArchiver.PATTERN, new FilePath(new File(tmp, "qrz")));
+            final long size = sizeOf(tmp);
+            Files.write(new File(tmp, ENTRY_FILENAME).toPath(),
+                    (returnValue + "\t" + System.currentTimeMillis() + "\t" + size + "\n").getBytes(StandardCharsets.UTF_8));
+
+            synchronized (lockFor(dir)) {
+                final File entry = new File(dir, key);
+                delete(entry);
+                Files.move(tmp.toPath(), entry.toPath());
+                entry.setLastModified(System.currentTimeMillis());
+                evict();
+            }
+        } finally {
+            delete(tmp);
+        }
+    }
+
+    /** Deletes expired entries, then the least recently used ones until the rest fits into the size limit */
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        final List<File> entries = new ArrayList<>();
+        final Map<File, Long> sizes = new HashMap<>();
+        long total = 0;
+        final File[] children = dir.listFiles();
+        for (File f : (children != null ? children : new File[0])) {
+            if (f.getName().contains(TMP_INFIX)) {
+                if (now - f.lastModified() > TMP_MAX_AGE) {
+                    delete(f);
+                }
+                continue;
+            }
+            final long[] info = readInfo(f);
+            if (info == null || (ttl > 0 && now - info[1] > ttl)) {
+                delete(f);
+                continue;
+            }
+            entries.add(f);
+            sizes.put(f, info[2]);
+            total += info[2];
+        }
+        if (maxSize <= 0) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File f : entries) {
+            if (total <= maxSize) {
+                break;
+            }
+            delete(f);
+            total -= sizes.get(f);
+        }
+    }
+
+    int size() {
+        final String[] names = dir.list();
+        return (names != null ? (int) Arrays.stream(names).filter(n -> !n.contains(TMP_INFIX)).count() : 0);
+    }
+
+    /**
+     * @return return value, creation time and size of an entry, or null if the entry is missing or corrupt
+     */
+    @CheckForNull
+    private static long[] readInfo(File entry) {
+        try {
+            final String[] cols = new String(Files.readAllBytes(new File(entry, ENTRY_FILENAME).toPath()), StandardCharsets.UTF_8)
+                    .trim().split("\t");
+            if (cols.length != 3) {
+                return null;
+            }
+            return new long[]{Integer.parseInt(cols[0]), Long.parseLong(cols[1]), Long.parseLong(cols[2])};
+        } catch (IOException | NumberFormatException ex) {
+            //not stored completely
+            return null;
+        }
+    }
+
+    private static long sizeOf(File f) {
+        final File[] children = f.listFiles();
+        if (children == null) {
+            return f.length();
+        }
+        long ret = 0;
+        for (File c : children) {
+            ret += sizeOf(c);
+        }
+        return ret;
+    }
+
+    private static void delete(File f) {
+        try {
+            Util.deleteRecursive(f);
+        } catch (IOException ex) {
+            //retried by the next eviction
+        }
+    }
+
+    private static Object lockFor(File dir) {
+        return locks.computeIfAbsent(dir.getAbsolutePath(), k -> new Object());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes a digest per suite on the agent, over the contents of the suite, of all suites it (transitively)
+     * includes, of the other files in its directory or below (like {@link SuiteDependencyIndex#affected}, e.g. test data)
+     * and of the SUT artifacts. Files shared by several suites are only read once.
+     */
+    static class Digests extends MasterToSlaveFileCallable<HashMap<String, String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> suites;
+        @CheckForNull
+        private final String sutArtifacts;
+        private final String cacheFile;
+        private final List<String> excludedDirs;
+
+        /**
+         * @param suites workspace relative paths of the suites
+         * @param sutArtifacts Ant pattern of the SUT artifacts below the workspace, null if there are none
+         * @param cacheFile absolute path of the cache file of the {@link SuiteDependencyIndex} on the agent
+         * @param excludedDirs workspace relative directories whose files are no inputs of the suites, e.g. the report directory
+         */
+        Digests(List<String> suites, @CheckForNull String sutArtifacts, String cacheFile, List<String> excludedDirs) {
+            this.suites = suites;
+            this.sutArtifacts = sutArtifacts;
+            this.cacheFile = cacheFile;
+            this.excludedDirs = excludedDirs;
+        }
+
+        @Override
+        public HashMap<String, String> invoke(File workspace, VirtualChannel channel) throws IOException {
+            final SuiteDependencyIndex index = new SuiteDependencyIndex.Scan(suites, cacheFile).invoke(workspace, channel);
+            final Map<String, String> files = new HashMap<>();
+
+            final StringBuilder sut = new StringBuilder();
+            if (sutArtifacts != null) {
+                final String[] artifacts = Util.createFileSet(workspace, sutArtifacts).getDirectoryScanner().getIncludedFiles();
+                Arrays.sort(artifacts);
+                for (String a : artifacts) {
+                    sut.append(a).append('=').append(digestOf(new File(workspace, a))).append('\n');
+                }
+            }
+
+            final Map<String, List<String>> resources = new HashMap<>();
+            final HashMap<String, String> ret = new HashMap<>();
+            for (String suite : suites) {
+                final StringBuilder sb = new StringBuilder(sut);
+                final Set<String> deps = closure(index, suite);
+                deps.addAll(resources.computeIfAbsent(SuiteDependencyIndex.parentOf(suite), dir -> resourcesIn(workspace, dir)));
+                for (String dep : deps) {
+                    sb.append(dep).append('=').append(files.computeIfAbsent(dep, d -> digestOf(new File(workspace, d)))).append('\n');
+                }
+                ret.put(suite, toHex(sha256().digest(sb.toString().getBytes(StandardCharsets.UTF_8))));
+            }
+            return ret;
+        }
+
+        /**
+         * @param dir workspace relative directory of a suite
+         * @return workspace relative paths of the files in the directory or below which are not suites themselves,
+         * skipping the excluded directories and Ant's default excludes like <tt>.git</tt>
+         */
+        private List<String> resourcesIn(File workspace, String dir) {
+            final File base = (dir.isEmpty() ? workspace : new File(workspace, dir));
+            final List<String> ret = new ArrayList<>();
+            if (!base.isDirectory()) {
+                return ret;
+            }
+            final String[] files = Util.createFileSet(base, "**", "**/*.qft").getDirectoryScanner().getIncludedFiles();
+            for (String f : files) {
+                final String path = (dir.isEmpty() ? "" : dir + "/") + f.replace('\\', '/');
+                if (excludedDirs.stream().noneMatch(ex -> path.startsWith(ex + "/"))) {
+                    ret.add(path);
+                }
+            }
+            return ret;
+        }
+
+        /** @return the suite and all suites it includes, sorted */
+        private static Set<String> closure(SuiteDependencyIndex index, String suite) {
+            final Set<String> ret = new TreeSet<>();
+            final Deque<String> todo = new ArrayDeque<>();
+            todo.add(suite);
+            while (!todo.isEmpty()) {
+                final String s = todo.poll();
+                if (ret.add(s)) {
+                    todo.addAll(index.getIncludes(s));
+                }
+            }
+            return ret;
+        }
+
+        /** @return the digest of the contents of a file, "-" if it does not exist */
+        private static String digestOf(File f) {
+            final MessageDigest md = sha256();
+            try (InputStream in = Files.newInputStream(f.toPath())) {
+                final byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    md.update(buf, 0, n);
+                }
+            } catch (IOException ex) {
+                return "-";
+            }
+            return toHex(md.digest());
+        }
+    }
+}
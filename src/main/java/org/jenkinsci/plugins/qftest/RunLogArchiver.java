@@ -0,0 +1,102 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import hudson.Functions;
+import hudson.Launcher;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.util.BuildListenerAdapter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archives the run logs of each QF-Test call as soon as the call has finished,
+ * instead of transferring all of them after the last suite.
+ *
+ * At most {@link #CONCURRENCY} transfers run at the same time. {@link #finish()} archives
+ * whatever is left, e.g. the partial run logs of calls that have been killed or cancelled.
+ */
+class RunLogArchiver {
+
+    static final int CONCURRENCY = 2;
+
+    static final String PATTERN = "**/*.q*";
+
+    private final Run<?, ?> run;
+    private final FilePath qrzdir;
+    private final Launcher launcher;
+    private final TaskListener listener;
+    private final String artifactPrefix;
+
+    private final ExecutorService transfers = Executors.newFixedThreadPool(CONCURRENCY);
+    private final Set<String> archived = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param artifactPrefix prepended to the path of the run logs below qrzdir to get their artifact name
+     */
+    RunLogArchiver(Run<?, ?> run, FilePath qrzdir, Launcher launcher, TaskListener listener, String artifactPrefix) {
+        this.run = run;
+        this.qrzdir = qrzdir;
+        this.launcher = launcher;
+        this.listener = listener;
+        this.artifactPrefix = artifactPrefix;
+    }
+
+    /**
+     * Archives the run logs of a finished QF-Test call in the background.
+     *
+     * @param runId name of the run log directory of the call below qrzdir
+     */
+    void archive(String runId) {
+        transfers.submit(() -> {
+            try {
+                archive(qrzdir.child(runId));
+            } catch (InterruptedException ex) {
+                //picked up by finish()
+            } catch (Exception ex) {
+                Functions.printStackTrace(ex, listener.error("Unable to archive run logs of " + runId + ": " + ex.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Waits for the pending transfers and archives all run logs not archived yet.
+     * Also works if the current thread has been interrupted, so the run logs of an aborted build are kept.
+     */
+    void finish() throws IOException, InterruptedException {
+        final boolean interrupted = Thread.interrupted();
+        try {
+            transfers.shutdown();
+            transfers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            archive(qrzdir);
+        } finally {
+            transfers.shutdownNow();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void archive(FilePath dir) throws IOException, InterruptedException {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final Map<String, String> artifacts = new LinkedHashMap<>();
+        Arrays.stream(dir.list(PATTERN))
+                .map(fp -> QFTestConfigBuilder.relativePath(qrzdir, fp))
+                .filter(n -> !archived.contains(n))
+                .forEach(n -> artifacts.put(artifactPrefix + n, n));
+        if (!artifacts.isEmpty()) {
+            run.pickArtifactManager().archive(qrzdir, launcher, new BuildListenerAdapter(listener), artifacts);
+            archived.addAll(artifacts.values());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Result;
+import hudson.model.Run;
+
+import javax.annotation.CheckForNull;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Assignment of expanded suites to shards, shared by all shards of one build.
+ *
+ * The first shard that expands its suites computes the plan and attaches it to the build,
+ * so all shards use the same assignment even if the suite history changes in between.
+ * Each shard also records its reduced return value and the build result it maps it to here once it has finished.
+ * A shard without suites, e.g. with more shards than suites, is recorded as finished without a return value
+ * and neither counts towards the reduced return value nor towards the worst result.
+ *
+ * Suites are planned by their path and custom parameters, see {@link #key}, so the same suite configured
+ * with different parameters may be run by different shards.
+ */
+public class ShardPlanAction extends InvisibleAction {
+
+    private final int shardCount;
+    private final Map<String, Integer> assignment;
+    private final Map<Integer, Integer> returnValues = new TreeMap<>();
+    private final Map<Integer, String> results = new TreeMap<>();
+    private Set<Integer> withoutSuites = new TreeSet<>();
+    @CheckForNull
+    private String onTestFailure;
+
+    ShardPlanAction(int shardCount, Map<String, Integer> assignment) {
+        this.shardCount = shardCount;
+        this.assignment = assignment;
+    }
+
+    /**
+     * @param historyKey the history key of a suite, see {@link QFTestConfigBuilder#historyKey}
+     * @param customParam the custom parameters of the suite
+     * @return the key of the suite in the plan
+     */
+    static String key(String historyKey, String customParam) {
+        return historyKey + "\t" + customParam;
+    }
+
+    /**
+     * @return the history key of a key of the plan
+     */
+    static String historyKeyOf(String key) {
+        final int tab = key.indexOf('\t');
+        return (tab >= 0 ? key.substring(0, tab) : key);
+    }
+
+    /**
+     * Returns the plan of the build or attaches a new one based on the given suites.
+     *
+     * @param run the current build
+     * @param keys distinct keys of the expanded suites, see {@link #key}
+     * @param history durations of previous builds
+     * @param shardCount number of shards
+     * @return the plan all shards of the build share
+     */
+    static ShardPlanAction getOrCreate(Run<?, ?> run, List<String> keys, SuiteHistory history, int shardCount) {
+        synchronized (run) {
+            ShardPlanAction plan = run.getAction(ShardPlanAction.class);
+            if (plan == null) {
+                plan = create(keys, history, shardCount);
+                run.addAction(plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * @return a plan balancing the given suites over the shards by their durations in previous builds
+     */
+    static ShardPlanAction create(List<String> keys, SuiteHistory history, int shardCount) {
+        int[] bins = SuiteScheduler.partition(keys, k -> history.expectedDuration(historyKeyOf(k)), shardCount);
+        Map<String, Integer> assignment = new HashMap<>();
+        for (int i = 0; i < bins.length; i++) {
+            assignment.put(keys.get(i), bins[i]);
+        }
+        return new ShardPlanAction(shardCount, assignment);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return the shard the suite is assigned to. Suites unknown to the plan are distributed by their hash
+     */
+    int shardOf(String key) {
+        Integer shard = assignment.get(key);
+        return (shard != null ? shard : Math.floorMod(key.hashCode(), shardCount));
+    }
+
+    /**
+     * @return the number of the given suites the plan does not know, and which are thus assigned by their hash
+     */
+    int countUnknown(List<String> keys) {
+        return (int) keys.stream().filter(k -> !assignment.containsKey(k)).count();
+    }
+
+    /**
+     * @return the number of suites of the plan missing from the given ones
+     */
+    int countMissing(List<String> keys) {
+        final Set<String> known = new HashSet<>(keys);
+        return (int) assignment.keySet().stream().filter(k -> !known.contains(k)).count();
+    }
+
+    /**
+     * @param ret the reduced return value of the shard, null if none of its QF-Test calls has returned one
+     * @param result the build result the shard maps its return value to
+     * @param onTestFailure the build result the shard maps a failure to
+     */
+    synchronized void setReturnValue(int shardIndex, @CheckForNull Character ret, String result, String onTestFailure) {
+        if (ret != null) {
+            returnValues.put(shardIndex, (int) ret.charValue());
+        }
+        results.put(shardIndex, result);
+        this.onTestFailure = onTestFailure;
+    }
+
+    /**
+     * Records a shard that has finished without running any suites
+     */
+    synchronized void setWithoutSuites(int shardIndex) {
+        if (withoutSuites == null) {
+            withoutSuites = new TreeSet<>();
+        }
+        withoutSuites.add(shardIndex);
+    }
+
+    /**
+     * @return the return values of the shards which have run suites and returned one
+     */
+    synchronized Map<Integer, Integer> getReturnValues() {
+        return new TreeMap<>(returnValues);
+    }
+
+    /**
+     * @return the number of shards which have finished, with or without suites
+     */
+    synchronized int getFinishedCount() {
+        final Set<Integer> finished = new HashSet<>(results.keySet());
+        if (withoutSuites != null) {
+            finished.addAll(withoutSuites);
+        }
+        return finished.size();
+    }
+
+    /**
+     * @return the number of shards which have finished without suites
+     */
+    synchronized int countWithoutSuites() {
+        return (withoutSuites != null ? withoutSuites.size() : 0);
+    }
+
+    /**
+     * @return whether any shard has run suites
+     */
+    synchronized boolean hasRunSuites() {
+        return !results.isEmpty();
+    }
+
+    /**
+     * @return the return values of the shards reduced like those of the QF-Test calls of a shard,
+     * null if no shard has returned one
+     */
+    @CheckForNull
+    synchronized Character getReducedReturnValue() {
+        final ReducedReturnValue reduced = new ReducedReturnValue();
+        returnValues.values().forEach(reduced::add);
+        return reduced.get();
+    }
+
+    /**
+     * @return the worst build result the finished shards have mapped their return values to, null if none has finished
+     */
+    @CheckForNull
+    synchronized Result getWorstResult() {
+        return (results == null ? null : results.values().stream()
+                .map(Result::fromString)
+                .reduce((a, b) -> a.isWorseThan(b) ? a : b)
+                .orElse(null));
+    }
+
+    /**
+     * @return the build result the shards map a failure to
+     */
+    synchronized Result getOnTestFailure() {
+        return (onTestFailure != null ? Result.fromString(onTestFailure) : Result.FAILURE);
+    }
+}
@@ -0,0 +1,107 @@
+package org.jenkinsci.plugins.qftest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * A group of expanded suites sharing the same custom parameters, which are run by a single QF-Test call.
+ */
+class SuiteBatch {
+
+    /** Maximum length of all suite paths on a command line, beyond that a suitesfile is used */
+    static final int MAX_CMDLINE_CHARS_UNIX = 100000;
+    static final int MAX_CMDLINE_CHARS_WINDOWS = 24000;
+
+    private final String customParam;
+    private final List<Suites> suites;
+
+    SuiteBatch(String customParam, List<Suites> suites) {
+        this.customParam = customParam;
+        this.suites = Collections.unmodifiableList(suites);
+    }
+
+    static SuiteBatch of(Suites sf) {
+        return new SuiteBatch(sf.getCustomParam(), Collections.singletonList(sf));
+    }
+
+    /**
+     * Groups suites with identical custom parameters into batches of at most maxSize suites.
+     * Suites using a <tt>-suitesfile</tt> are never batched. The order of the suites within
+     * a group is retained and the batches are returned in the order of their first suite.
+     */
+    static List<SuiteBatch> group(List<Suites> suites, int maxSize) {
+        return group(suites, maxSize, sf -> false);
+    }
+
+    /**
+     * Like {@link #group(List, int)}, but suites matching alone get a call of their own,
+     * e.g. because their outcome has to be known per suite.
+     */
+    static List<SuiteBatch> group(List<Suites> suites, int maxSize, Predicate<Suites> alone) {
+        if (maxSize <= 1) {
+            return suites.stream().map(SuiteBatch::of).collect(Collectors.toList());
+        }
+
+        final List<SuiteBatch> ret = new ArrayList<>();
+        final Map<String, List<Suites>> open = new LinkedHashMap<>();
+        for (Suites sf : suites) {
+            final String param = (sf.getCustomParam() != null ? sf.getCustomParam() : "");
+            if (param.contains("-suitesfile") || alone.test(sf)) {
+                ret.add(of(sf));
+                continue;
+            }
+            List<Suites> members = open.computeIfAbsent(param, k -> {
+                List<Suites> l = new ArrayList<>();
+                ret.add(new SuiteBatch(param, l));
+                return l;
+            });
+            members.add(sf);
+            if (members.size() >= maxSize) {
+                open.remove(param);
+            }
+        }
+        return ret;
+    }
+
+    String getCustomParam() {
+        return customParam;
+    }
+
+    List<Suites> getSuites() {
+        return suites;
+    }
+
+    List<String> getPaths() {
+        return suites.stream().map(Suites::getSuitename).collect(Collectors.toList());
+    }
+
+    int size() {
+        return suites.size();
+    }
+
+    /**
+     * @return true, if the suite paths would exceed the command line length limit of the OS
+     */
+    boolean needsSuitesfile(boolean isUnix) {
+        if (suites.size() <= 1) {
+            return false;
+        }
+        int length = 0;
+        for (Suites sf : suites) {
+            length += sf.getSuitename().length() + 3;
+        }
+        return length > (isUnix ? MAX_CMDLINE_CHARS_UNIX : MAX_CMDLINE_CHARS_WINDOWS);
+    }
+
+    @Override
+    public String toString() {
+        return (suites.size() == 1
+                ? suites.get(0).toString()
+                : "BATCH of " + suites.size() + " suites with custom params: `" + customParam + "'");
+    }
+}
@@ -0,0 +1,337 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Include dependencies between test suites, used to select the suites affected by a change set.
+ *
+ * All paths are relative to the workspace and use forward slashes, just like the paths reported by SCM change sets.
+ */
+class SuiteDependencyIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String CACHE_FILENAME = "qftest-dependencies.tsv";
+
+    /** suite -> suites it includes directly */
+    private final Map<String, List<String>> includes;
+
+    SuiteDependencyIndex(Map<String, List<String>> includes) {
+        this.includes = includes;
+    }
+
+    List<String> getIncludes(String suite) {
+        return includes.getOrDefault(suite, Collections.emptyList());
+    }
+
+    /**
+     * Determines the suites affected by a set of changed files.
+     * A suite is affected if itself or any suite it (transitively) includes has changed,
+     * or if a changed file which is not a suite lies in the directory of the suite or below (e.g. test data).
+     * For a suite in the workspace root, this only holds for changed files outside of the directories of all other
+     * known suites, otherwise any change would select it.
+     *
+     * @param suites candidate suites
+     * @param changedPaths changed files
+     * @return the affected subset of the suites, in their original order
+     */
+    Set<String> affected(Collection<String> suites, Collection<String> changedPaths) {
+        final Set<String> changed = new HashSet<>(changedPaths);
+        final List<String> changedResources = new ArrayList<>();
+        for (String p : changedPaths) {
+            if (!p.endsWith(".qft")) {
+                changedResources.add(p);
+            }
+        }
+
+        final Set<String> ret = new LinkedHashSet<>();
+        List<String> rootResources = null;
+        for (String suite : suites) {
+            final String dir = parentOf(suite);
+            if (dir.isEmpty() && rootResources == null) {
+                rootResources = outsideOf(suiteDirectories(suites), changedResources);
+            }
+            if (dependsOnAny(suite, changed)
+                    || (dir.isEmpty() ? !rootResources.isEmpty() : containsAny(dir, changedResources))) {
+                ret.add(suite);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the directories of the given and all indexed suites, except the workspace root
+     */
+    private Set<String> suiteDirectories(Collection<String> suites) {
+        final Set<String> ret = new HashSet<>();
+        final Deque<String> todo = new ArrayDeque<>(suites);
+        todo.addAll(includes.keySet());
+        includes.values().forEach(todo::addAll);
+        for (String s : todo) {
+            final String dir = parentOf(s);
+            if (!dir.isEmpty()) {
+                ret.add(dir);
+            }
+        }
+        return ret;
+    }
+
+    private static List<String> outsideOf(Set<String> dirs, List<String> paths) {
+        final List<String> ret = new ArrayList<>();
+        for (String p : paths) {
+            boolean inside = false;
+            for (String dir = parentOf(p); !dir.isEmpty() && !inside; dir = parentOf(dir)) {
+                inside = dirs.contains(dir);
+            }
+            if (!inside) {
+                ret.add(p);
+            }
+        }
+        return ret;
+    }
+
+    private boolean dependsOnAny(String suite, Set<String> changed) {
+        final Set<String> seen = new HashSet<>();
+        final Deque<String> todo = new ArrayDeque<>();
+        todo.add(suite);
+        while (!todo.isEmpty()) {
+            String s = todo.poll();
+            if (!seen.add(s)) continue;
+            if (changed.contains(s)) return true;
+            todo.addAll(getIncludes(s));
+        }
+        return false;
+    }
+
+    private static boolean containsAny(String dir, List<String> paths) {
+        for (String p : paths) {
+            if (p.startsWith(dir + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String parentOf(String path) {
+        final int idx = path.lastIndexOf('/');
+        return (idx < 0 ? "" : path.substring(0, idx));
+    }
+
+    /**
+     * Resolves an include reference relative to the directory of the including suite.
+     * QF-Test also searches its library path, so unresolvable references are matched by file name
+     * against all known suites.
+     */
+    static String resolve(File workspace, String suite, String include, Map<String, String> byName) {
+        String ref = include.replace('\\', '/');
+        String dir = parentOf(suite);
+        String candidate = normalize(dir.isEmpty() ? ref : dir + "/" + ref);
+        if (new File(workspace, candidate).isFile()) {
+            return candidate;
+        }
+        String name = ref.substring(ref.lastIndexOf('/') + 1);
+        return byName.getOrDefault(name, candidate);
+    }
+
+    static String normalize(String path) {
+        final Deque<String> parts = new ArrayDeque<>();
+        for (String p : path.split("/")) {
+            if (p.isEmpty() || p.equals(".")) continue;
+            if (p.equals("..") && !parts.isEmpty() && !parts.peekLast().equals("..")) {
+                parts.pollLast();
+            } else {
+                parts.addLast(p);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    /**
+     * Reads the <tt>include</tt> elements of a suite.
+     * QF-Test writes them in a row below the root element, so parsing stops at the first other child following them.
+     */
+    static List<String> parseIncludes(File suite) throws IOException {
+        final List<String> ret = new ArrayList<>();
+        try (InputStream in = open(suite)) {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        if (depth == 2 && reader.getLocalName().equals("include")) {
+                            ret.add(reader.getElementText().trim());
+                            depth--;
+                        } else if (depth == 2 && !ret.isEmpty()) {
+                            break;
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Unable to parse " + suite + ": " + ex.getMessage(), ex);
+        }
+        return ret;
+    }
+
+    private static InputStream open(File suite) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(suite.toPath()));
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        return (magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(in) : in);
+    }
+
+    /**
+     * Builds the index on the agent, starting from the given suites and following their includes.
+     * Parsed includes are cached per file (keyed on size and modification time), so only changed suites are parsed again.
+     */
+    static class Scan extends MasterToSlaveFileCallable<SuiteDependencyIndex> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> suites;
+        private final String cacheFile;
+
+        /**
+         * @param suites workspace relative paths of the suites to start with
+         * @param cacheFile absolute path of the cache file on the agent
+         */
+        Scan(List<String> suites, String cacheFile) {
+            this.suites = suites;
+            this.cacheFile = cacheFile;
+        }
+
+        @Override
+        public SuiteDependencyIndex invoke(File workspace, VirtualChannel channel) throws IOException {
+            final File cache = new File(cacheFile);
+            final Map<String, String[]> cached = readCache(cache);
+            final Map<String, String[]> updated = new HashMap<>();
+
+            final Map<String, String> byName = new HashMap<>();
+            for (String s : suites) {
+                byName.putIfAbsent(s.substring(s.lastIndexOf('/') + 1), s);
+            }
+
+            final Map<String, List<String>> includes = new HashMap<>();
+            final Deque<String> todo = new ArrayDeque<>(suites);
+            while (!todo.isEmpty()) {
+                final String suite = todo.poll();
+                if (includes.containsKey(suite)) continue;
+
+                final File f = new File(workspace, suite);
+                if (!f.isFile()) {
+                    includes.put(suite, Collections.emptyList());
+                    continue;
+                }
+
+                final String stamp = f.length() + ":" + f.lastModified();
+                String[] entry = cached.get(suite);
+                List<String> raw;
+                if (entry != null && entry[0].equals(stamp)) {
+                    raw = Arrays.asList(entry).subList(1, entry.length);
+                } else {
+                    try {
+                        raw = parseIncludes(f);
+                    } catch (IOException ex) {
+                        raw = Collections.emptyList();
+                    }
+                }
+                String[] newEntry = new String[raw.size() + 1];
+                newEntry[0] = stamp;
+                for (int i = 0; i < raw.size(); i++) {
+                    newEntry[i + 1] = raw.get(i);
+                }
+                updated.put(suite, newEntry);
+
+                List<String> resolved = new ArrayList<>();
+                for (String inc : raw) {
+                    String r = resolve(workspace, suite, inc, byName);
+                    resolved.add(r);
+                    todo.add(r);
+                }
+                includes.put(suite, resolved);
+            }
+
+            writeCache(cache, updated);
+            return new SuiteDependencyIndex(includes);
+        }
+
+        /** One line per suite: stamp TAB path TAB include... */
+        private static Map<String, String[]> readCache(File cache) throws IOException {
+            final Map<String, String[]> ret = new HashMap<>();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    Files.newInputStream(cache.toPath()), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] cols = line.split("\t");
+                    if (cols.length < 2) continue;
+                    String[] entry = new String[cols.length - 1];
+                    entry[0] = cols[0];
+                    System.arraycopy(cols, 2, entry, 1, cols.length - 2);
+                    ret.put(cols[1], entry);
+                }
+            } catch (NoSuchFileException ex) {
+                //no cache yet
+            }
+            return ret;
+        }
+
+        private static void writeCache(File cache, Map<String, String[]> entries) throws IOException {
+            cache.getParentFile().mkdirs();
+            File tmp = new File(cache.getPath() + ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, String[]> e : entries.entrySet()) {
+                    String[] v = e.getValue();
+                    w.write(v[0]);
+                    w.write('\t');
+                    w.write(e.getKey());
+                    for (int i = 1; i < v.length; i++) {
+                        w.write('\t');
+                        w.write(v[i]);
+                    }
+                    w.write('\n');
+                }
+            }
+            Files.move(tmp.toPath(), cache.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Agent side cache for the recursive search of suites (or run logs) below a directory.
+ *
+ * For every directory of the tree, its modification time, the matching files and the subdirectories are stored.
+ * A directory is only listed again if its modification time has changed, i.e. if entries have been added,
+ * removed or renamed in it. Unchanged directories just cost a single stat call.
+ *
+ * Only patterns of the form <tt>**&#47;&lt;file name glob&gt;</tt> are supported, see {@link #supports(String)}.
+ * The result is the same as that of the Ant {@link DirectoryScanner} used otherwise: the file name is matched case
+ * sensitively, Ant's default excludes apply and symbolic links to directories are followed, unless they lead
+ * back to a directory being scanned.
+ */
+class SuiteDiscoveryCache {
+
+    /** Directory modifications within this period may not be reflected by a coarse modification time */
+    static final long MTIME_GRANULARITY = 2000;
+
+    private static final Pattern SUPPORTED = Pattern.compile("\\*\\*/[^/\\\\]+");
+
+    private static class DirEntry {
+        final long mtime;
+        final List<String> files;
+        final List<String> subdirs;
+
+        DirEntry(long mtime, List<String> files, List<String> subdirs) {
+            this.mtime = mtime;
+            this.files = files;
+            this.subdirs = subdirs;
+        }
+    }
+
+    private final File cacheFile;
+    private final boolean forceRescan;
+
+    private int listed = 0;
+    private int reused = 0;
+
+    /**
+     * @param cacheFile file the cache of this root directory and pattern is kept in
+     * @param forceRescan ignore the cached state and list all directories again
+     */
+    SuiteDiscoveryCache(File cacheFile, boolean forceRescan) {
+        this.cacheFile = cacheFile;
+        this.forceRescan = forceRescan;
+    }
+
+    static boolean supports(String includes) {
+        return SUPPORTED.matcher(includes).matches();
+    }
+
+    /**
+     * @return name of the cache file for the given root directory and pattern
+     */
+    static String cacheFileName(File root, String includes) {
+        return "qftest-discovery-" + Integer.toHexString((root.getAbsolutePath() + "|" + includes).hashCode()) + ".tsv";
+    }
+
+    /**
+     * Finds all files below root matching the pattern.
+     *
+     * @param root directory to search
+     * @param includes a pattern supported by {@link #supports(String)}
+     * @return the paths of all matching files
+     */
+    List<String> scan(File root, String includes) throws IOException {
+        final String glob = includes.substring(3);
+        final Map<String, DirEntry> cached = (forceRescan ? new HashMap<>() : read());
+        final Map<String, DirEntry> updated = new HashMap<>();
+        final long now = System.currentTimeMillis();
+
+        final List<String> ret = new ArrayList<>();
+        final List<Dir> todo = new ArrayList<>();
+        todo.add(new Dir("", root.toPath().toRealPath()));
+        while (!todo.isEmpty()) {
+            final Dir next = todo.remove(todo.size() - 1);
+            final String rel = next.rel;
+            final File dir = (rel.isEmpty() ? root : new File(root, rel));
+            final long mtime = dir.lastModified();
+
+            DirEntry entry = cached.get(rel);
+            if (entry == null || entry.mtime != mtime || now - mtime < MTIME_GRANULARITY) {
+                entry = list(dir, rel, mtime, glob);
+                listed++;
+            } else {
+                reused++;
+            }
+            updated.put(rel, entry);
+
+            for (String f : entry.files) {
+                ret.add(new File(dir, f).getPath());
+            }
+            for (String d : entry.subdirs) {
+                final File sub = new File(dir, d);
+                Path real = next.real.resolve(d);
+                if (Files.isSymbolicLink(sub.toPath())) {
+                    try {
+                        real = sub.toPath().toRealPath();
+                    } catch (IOException ex) {
+                        //dangling link
+                        continue;
+                    }
+                    if (next.real.startsWith(real)) {
+                        //leads back to a directory being scanned
+                        continue;
+                    }
+                }
+                todo.add(new Dir(rel.isEmpty() ? d : rel + "/" + d, real));
+            }
+        }
+
+        write(updated);
+        return ret;
+    }
+
+    /** A directory to scan, with its path relative to the root and its real path */
+    private static class Dir {
+        final String rel;
+        final Path real;
+
+        Dir(String rel, Path real) {
+            this.rel = rel;
+            this.real = real;
+        }
+    }
+
+    int getListed() {
+        return listed;
+    }
+
+    int getReused() {
+        return reused;
+    }
+
+    /**
+     * @param rel path of the directory relative to the root, separated by '/'
+     * @param glob Ant pattern of the file names
+     */
+    private static DirEntry list(File dir, String rel, long mtime, String glob) {
+        final List<String> files = new ArrayList<>();
+        final List<String> subdirs = new ArrayList<>();
+        final File[] children = dir.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                final String name = c.getName();
+                if (isDefaultExcluded(rel.isEmpty() ? name : rel + "/" + name)) {
+                    continue;
+                }
+                if (c.isDirectory()) {
+                    subdirs.add(name);
+                } else if (SelectorUtils.match(glob, name, true)) {
+                    files.add(name);
+                }
+            }
+        }
+        return new DirEntry(mtime, files, subdirs);
+    }
+
+    /**
+     * @param rel path relative to the root, separated by '/'
+     * @return whether Ant's default excludes, like <tt>**&#47;.git</tt> or <tt>**&#47;*~</tt>, exclude the path
+     */
+    private static boolean isDefaultExcluded(String rel) {
+        final String path = rel.replace('/', File.separatorChar);
+        for (String exclude : DirectoryScanner.getDefaultExcludes()) {
+            if (SelectorUtils.matchPath(exclude.replace('/', File.separatorChar), path, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Cache format, one line per directory: mtime TAB relative dir TAB file names separated by '/' TAB subdirectory names separated by '/'
+     */
+    private Map<String, DirEntry> read() throws IOException {
+        final Map<String, DirEntry> ret = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(cacheFile.toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] cols = line.split("\t", -1);
+                if (cols.length != 4) continue;
+                try {
+                    ret.put(cols[1], new DirEntry(Long.parseLong(cols[0]), split(cols[2]), split(cols[3])));
+                } catch (NumberFormatException ex) {
+                    //skip corrupt line
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            //no cache yet
+        }
+        return ret;
+    }
+
+    private void write(Map<String, DirEntry> entries) throws IOException {
+        cacheFile.getParentFile().mkdirs();
+        final File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (Writer w = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, DirEntry> e : entries.entrySet()) {
+                w.write(Long.toString(e.getValue().mtime));
+                w.write('\t');
+                w.write(e.getKey());
+                w.write('\t');
+                w.write(String.join("/", e.getValue().files));
+                w.write('\t');
+                w.write(String.join("/", e.getValue().subdirs));
+                w.write('\n');
+            }
+        }
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static List<String> split(String s) {
+        return (s.isEmpty() ? new ArrayList<>() : Arrays.asList(s.split("/")));
+    }
+}
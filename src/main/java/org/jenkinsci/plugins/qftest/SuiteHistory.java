@@ -0,0 +1,208 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.util.AtomicFileWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per job store of suite statistics gathered during previous builds.
+ *
+ * The history is kept in a small tab separated file in the job directory with one line per suite:
+ * <pre>
+ *     &lt;smoothed duration in ms&gt; TAB &lt;last build seen&gt; TAB &lt;runs&gt; TAB &lt;flaky runs&gt; TAB &lt;suite path&gt;
+ * </pre>
+ * A run is flaky if the suite failed at first but passed on a retry. Both counters are halved once
+ * the runs exceed {@link #MAX_RUNS}, so the flakiness rate follows recent builds.
+ * Suites that have not been run for {@link #MAX_AGE} builds are pruned on the next update.
+ */
+class SuiteHistory {
+
+    static final String FILENAME = "qftest-suite-history.tsv";
+    static final int MAX_AGE = 100;
+    static final int MAX_RUNS = 50;
+
+    /** Minimum number of recorded runs before a suite may be quarantined */
+    static final int MIN_RUNS_FOR_QUARANTINE = 5;
+
+    private static final String HEADER = "# QF-Test suite history v2";
+    private static final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    static class Entry {
+        final long duration;
+        final int lastBuild;
+        final int runs;
+        final int flakyRuns;
+
+        Entry(long duration, int lastBuild, int runs, int flakyRuns) {
+            this.duration = duration;
+            this.lastBuild = lastBuild;
+            this.runs = runs;
+            this.flakyRuns = flakyRuns;
+        }
+
+        /**
+         * @param buildNumber number of the build the run belongs to, the suite counts as seen in it
+         */
+        Entry withRun(boolean flaky, int buildNumber) {
+            int r = runs + 1;
+            int f = flakyRuns + (flaky ? 1 : 0);
+            if (r > MAX_RUNS) {
+                r /= 2;
+                f /= 2;
+            }
+            return new Entry(duration, Math.max(buildNumber, lastBuild), r, f);
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private SuiteHistory(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static SuiteHistory empty() {
+        return new SuiteHistory(Collections.emptyMap());
+    }
+
+    static SuiteHistory load(File jobDir) throws IOException {
+        File file = new File(jobDir, FILENAME);
+        synchronized (lockFor(file)) {
+            return new SuiteHistory(read(file));
+        }
+    }
+
+    /**
+     * @return the expected duration of the given suite in ms or -1 if unknown
+     */
+    long expectedDuration(String suite) {
+        Entry e = entries.get(suite);
+        return (e != null ? e.duration : -1);
+    }
+
+    /**
+     * @return the percentage of recorded runs of the suite that were flaky, or -1 if there are too few runs to tell
+     */
+    int flakyPercentage(String suite) {
+        Entry e = entries.get(suite);
+        if (e == null || e.runs < MIN_RUNS_FOR_QUARANTINE) {
+            return -1;
+        }
+        return e.flakyRuns * 100 / e.runs;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static void update(File jobDir, Map<String, Long> durations, int buildNumber) throws IOException {
+        update(jobDir, durations, Collections.emptyMap(), buildNumber);
+    }
+
+    /**
+     * Merges the durations measured during a build into the history file of a job.
+     * The file is re-read under a lock, so concurrent builds of the same job do not lose samples.
+     *
+     * @param jobDir root directory of the job
+     * @param durations measured wall clock durations in ms per suite path
+     * @param flaky whether the run of a suite has been flaky, for suites whose outcome is conclusive
+     * @param buildNumber number of the build the samples stem from
+     */
+    static void update(File jobDir, Map<String, Long> durations, Map<String, Boolean> flaky, int buildNumber) throws IOException {
+        File file = new File(jobDir, FILENAME);
+        synchronized (lockFor(file)) {
+            Map<String, Entry> current = read(file);
+            durations.forEach((suite, duration) -> {
+                Entry old = current.get(suite);
+                current.put(suite, new Entry(
+                        old == null || old.duration < 0 ? duration : smooth(old.duration, duration),
+                        Math.max(buildNumber, old == null ? 0 : old.lastBuild),
+                        old == null ? 0 : old.runs,
+                        old == null ? 0 : old.flakyRuns
+                ));
+            });
+            flaky.forEach((suite, isFlaky) -> {
+                Entry old = current.get(suite);
+                if (old == null) {
+                    //suite never passed, so there is no duration either
+                    old = new Entry(-1, buildNumber, 0, 0);
+                }
+                current.put(suite, old.withRun(isFlaky, buildNumber));
+            });
+            current.values().removeIf(e -> e.lastBuild <= buildNumber - MAX_AGE);
+            write(file, current);
+        }
+    }
+
+    /** Exponentially weighted moving average, favouring recent samples */
+    static long smooth(long old, long sample) {
+        return old + (sample - old) * 3 / 10;
+    }
+
+    private static Object lockFor(File file) {
+        return locks.computeIfAbsent(file.getAbsolutePath(), k -> new Object());
+    }
+
+    private static Map<String, Entry> read(File file) throws IOException {
+        Map<String, Entry> ret = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(file.toPath()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] cols = line.split("\t", 5);
+                try {
+                    if (cols.length == 3) {
+                        //v1 line without flakiness statistics
+                        ret.put(cols[2], new Entry(Long.parseLong(cols[0]), Integer.parseInt(cols[1]), 0, 0));
+                    } else if (cols.length == 5) {
+                        ret.put(cols[4], new Entry(Long.parseLong(cols[0]), Integer.parseInt(cols[1]),
+                                Integer.parseInt(cols[2]), Integer.parseInt(cols[3])));
+                    }
+                } catch (NumberFormatException ex) {
+                    //skip corrupt line
+                }
+            }
+        } catch (FileNotFoundException | java.nio.file.NoSuchFileException ex) {
+            //no history yet
+        }
+        return ret;
+    }
+
+    private static void write(File file, Map<String, Entry> entries) throws IOException {
+        AtomicFileWriter w = new AtomicFileWriter(file.toPath(), StandardCharsets.UTF_8);
+        try {
+            writeTo(w, entries);
+            w.commit();
+        } finally {
+            w.abort();
+        }
+    }
+
+    private static void writeTo(Writer w, Map<String, Entry> entries) throws IOException {
+        w.write(HEADER);
+        w.write('\n');
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            w.write(Long.toString(e.getValue().duration));
+            w.write('\t');
+            w.write(Integer.toString(e.getValue().lastBuild));
+            w.write('\t');
+            w.write(Integer.toString(e.getValue().runs));
+            w.write('\t');
+            w.write(Integer.toString(e.getValue().flakyRuns));
+            w.write('\t');
+            w.write(e.getKey());
+            w.write('\n');
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.jenkinsci.plugins.qftest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders suite runs based on their expected durations.
+ */
+class SuiteScheduler {
+
+    private SuiteScheduler() {}
+
+    /**
+     * Sorts items by their expected duration, longest first (LPT).
+     * Handing the resulting list to a pool of workers in this order yields a makespan close to optimal.
+     *
+     * Items with unknown duration (negative values) are treated as if they took as long as the longest known item,
+     * so they do not end up as stragglers. Ties keep their original order.
+     *
+     * @param items the items to schedule
+     * @param expected expected duration of an item or a negative value if unknown
+     * @return a new list with the items in scheduling order
+     */
+    static <T> List<T> longestFirst(List<T> items, ToLongFunction<T> expected) {
+        final long[] weights = weights(items, expected);
+        final List<Integer> order = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong((Integer i) -> weights[i]).reversed());
+
+        final List<T> ret = new ArrayList<>(items.size());
+        for (int i : order) {
+            ret.add(items.get(i));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the expected durations of all items, with unknown durations replaced by the longest known one
+     */
+    static <T> long[] weights(List<T> items, ToLongFunction<T> expected) {
+        final long[] weights = new long[items.size()];
+        long max = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = expected.applyAsLong(items.get(i));
+            max = Math.max(max, weights[i]);
+        }
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                weights[i] = max;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Distributes items over n bins, so that the sum of the expected durations per bin is balanced.
+     * Items are assigned longest first to the bin with the lowest load (ties go to the lower bin index),
+     * so the result only depends on the order of the items and their weights.
+     *
+     * @param items the items to distribute
+     * @param expected expected duration of an item or a negative value if unknown
+     * @param n number of bins
+     * @return the bin index for each item
+     */
+    static <T> int[] partition(List<T> items, ToLongFunction<T> expected, int n) {
+        final long[] weights = weights(items, expected);
+        for (int i = 0; i < weights.length; i++) {
+            //avoid that many unknown suites end up in the same bin
+            weights[i] = Math.max(weights[i], 1);
+        }
+        final List<Integer> order = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong((Integer i) -> weights[i]).reversed());
+
+        final long[] load = new long[n];
+        final int[] bins = new int[items.size()];
+        for (int i : order) {
+            int min = 0;
+            for (int b = 1; b < n; b++) {
+                if (load[b] < load[min]) {
+                    min = b;
+                }
+            }
+            bins[i] = min;
+            load[min] += weights[i];
+        }
+        return bins;
+    }
+}
@@ -30,10 +30,15 @@ import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.Descriptor;
 
+import hudson.remoting.VirtualChannel;
 import hudson.util.FormValidation;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.tools.ant.BuildException;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
+import javax.annotation.CheckForNull;
+
 import static com.pivovarit.function.ThrowingFunction.unchecked;
 import static com.pivovarit.function.ThrowingSupplier.unchecked;
 
@@ -42,7 +47,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Stream;
@@ -150,18 +157,77 @@ public class Suites extends AbstractDescribableImpl<Suites> {
 //	}
 
 
-	//TODO: this should return a Stream of suites
+	/**
+	 * Resolves the suite name against base on the node of base.
+	 * An existing file resolves to itself, an existing directory to all files matching {@link #directorySearchString()}
+	 * below it and anything else is treated as Ant-style pattern relative to base.
+	 * The resolution is done by a single remote call.
+	 */
 	public Stream<FilePath> getExpandedPaths(FilePath base) throws IOException, InterruptedException {
+		return getExpandedPaths(base, null, false);
+	}
+
+	/**
+	 * Like {@link #getExpandedPaths(FilePath)}, but the search below a directory is backed by a {@link SuiteDiscoveryCache}
+	 *
+	 * @param cacheDir directory on the node of base to keep the cache in, null to disable caching
+	 * @param forceRescan ignore the cache and search all directories again
+	 */
+	public Stream<FilePath> getExpandedPaths(FilePath base, @CheckForNull FilePath cacheDir, boolean forceRescan) throws IOException, InterruptedException {
+		return base.act(new Discovery(this.suitename, directorySearchString(), cacheDir != null ? cacheDir.getRemote() : null, forceRescan)).stream()
+				.map(p -> new FilePath(base.getChannel(), p));
+	}
+
+	/**
+	 * Expands a suite name on the node holding the files
+	 */
+	static class Discovery extends MasterToSlaveFileCallable<List<String>> {
+		private static final long serialVersionUID = 1L;
+
+		private final String suitename;
+		private final String directorySearchString;
+		@CheckForNull
+		private final String cacheDir;
+		private final boolean forceRescan;
+
+		Discovery(String suitename, String directorySearchString, @CheckForNull String cacheDir, boolean forceRescan) {
+			this.suitename = suitename;
+			this.directorySearchString = directorySearchString;
+			this.cacheDir = cacheDir;
+			this.forceRescan = forceRescan;
+		}
+
+		@Override
+		public List<String> invoke(File base, VirtualChannel channel) throws IOException {
+			File childCandid = new File(suitename);
+			if (!childCandid.isAbsolute()) {
+				childCandid = new File(base, suitename);
+			}
 
-		final FilePath childCandid = base.child(this.suitename);
-		if (childCandid.exists()) {
-			if (childCandid.isDirectory()) {
-			    return Arrays.stream(childCandid.list(directorySearchString()));
+			if (childCandid.isFile()) {
+				return Collections.singletonList(childCandid.getPath());
+			} else if (childCandid.isDirectory()) {
+				if (cacheDir != null && SuiteDiscoveryCache.supports(directorySearchString)) {
+					File cacheFile = new File(cacheDir, SuiteDiscoveryCache.cacheFileName(childCandid, directorySearchString));
+					return new SuiteDiscoveryCache(cacheFile, forceRescan).scan(childCandid, directorySearchString);
+				}
+				return scan(childCandid, directorySearchString);
 			} else {
-				return Stream.of(childCandid);
+				return scan(base, suitename);
+			}
+		}
+
+		private static List<String> scan(File dir, String includes) throws IOException {
+			try {
+				String[] files = Util.createFileSet(dir, includes).getDirectoryScanner().getIncludedFiles();
+				List<String> ret = new ArrayList<>(files.length);
+				for (String f : files) {
+					ret.add(new File(dir, f).getPath());
+				}
+				return ret;
+			} catch (BuildException ex) {
+				throw new IOException(ex.getMessage(), ex);
 			}
-		} else {
-			return Arrays.stream(base.list(this.suitename));
 		}
 	}
 
@@ -201,8 +267,12 @@ public class Suites extends AbstractDescribableImpl<Suites> {
 	}
 
 	public Stream<Suites> expand(FilePath base) throws IOException, InterruptedException {
+		return expand(base, null, false);
+	}
+
+	public Stream<Suites> expand(FilePath base, @CheckForNull FilePath cacheDir, boolean forceRescan) throws IOException, InterruptedException {
 			Suites ret = this.considerSuitesfile();
-			return ret.getExpandedPaths(base)
+			return ret.getExpandedPaths(base, cacheDir, forceRescan)
 					.map(unchecked( p -> new Suites(p.getRemote(), ret.getCustomParam())));
 	}
 }
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.model.InvisibleAction;
+import hudson.model.Run;
+
+import javax.annotation.CheckForNull;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wall clock durations of the phases of the QF-Test steps of a build and of the suites run by them.
+ *
+ * Several steps of the same build (e.g. shards) run in parallel, so a phase is recorded with its duration
+ * in the step where it took longest, not summed over the steps.
+ * The data is shown as trend by {@link TimingTrendAction} and exported in the Prometheus text format.
+ */
+public class TimingAction extends InvisibleAction {
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> suites = new TreeMap<>();
+    private long launchTotal;
+    private int calls;
+    private long admissionWait;
+
+    /**
+     * Measures consecutive phases of a step: starting a phase ends the previous one.
+     * A phase started several times in the step is added up.
+     */
+    static class PhaseTimer {
+        private final TimingAction target;
+        private final Map<String, Long> totals = new HashMap<>();
+        @CheckForNull
+        private String current;
+        private long since;
+
+        PhaseTimer(TimingAction target) {
+            this.target = target;
+        }
+
+        void begin(String phase) {
+            end();
+            current = phase;
+            since = System.currentTimeMillis();
+        }
+
+        void end() {
+            if (current != null) {
+                target.addPhase(current, totals.merge(current, System.currentTimeMillis() - since, Long::sum));
+                current = null;
+            }
+        }
+    }
+
+    static TimingAction getOrCreate(Run<?, ?> run) {
+        synchronized (run) {
+            TimingAction action = run.getAction(TimingAction.class);
+            if (action == null) {
+                action = new TimingAction();
+                run.addAction(action);
+                TimingTrendAction.Factory.timed(run.getParent());
+            }
+            return action;
+        }
+    }
+
+    /**
+     * @param millis duration of the phase in one step so far
+     */
+    synchronized void addPhase(String phase, long millis) {
+        phases.merge(phase, millis, Math::max);
+    }
+
+    synchronized void addSuites(Map<String, Long> durations) {
+        suites.putAll(durations);
+    }
+
+    /**
+     * @param launchMillis time it took to start the QF-Test process of a call
+     */
+    synchronized void addCall(long launchMillis) {
+        launchTotal += launchMillis;
+        calls++;
+    }
+
+    /**
+     * @param millis time a QF-Test call waited for admission, see {@link AdmissionControl}
+     */
+    synchronized void addAdmissionWait(long millis) {
+        admissionWait += millis;
+    }
+
+    public synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    public synchronized Map<String, Long> getSuites() {
+        return new TreeMap<>(suites);
+    }
+
+    /**
+     * @return the total time spent starting QF-Test processes, summed over all calls
+     */
+    public synchronized long getLaunchTotal() {
+        return launchTotal;
+    }
+
+    public synchronized int getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the total time QF-Test calls waited for admission, summed over all calls
+     */
+    public synchronized long getAdmissionWait() {
+        return admissionWait;
+    }
+}
@@ -0,0 +1,189 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.util.ChartUtil;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import jenkins.model.TransientActionFactory;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.plot.PlotOrientation;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Job level view of the {@link TimingAction}s of its builds: a trend graph of the phase durations
+ * shown on the job page, and the timings of the last completed build in the Prometheus text format
+ * at <tt>job/&lt;name&gt;/qftest-timing/prometheus</tt>.
+ */
+public class TimingTrendAction implements Action {
+
+    /** Number of builds shown in the trend graph */
+    static final int TREND_BUILDS = 30;
+
+    private final Job<?, ?> job;
+
+    TimingTrendAction(Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "QF-Test Timing";
+    }
+
+    @Override
+    public String getUrlName() {
+        return "qftest-timing";
+    }
+
+    /**
+     * Renders the phase durations of the recent builds as stacked area chart
+     */
+    public void doTrend(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        final Run<?, ?> last = job.getLastCompletedBuild();
+        if (last == null) {
+            rsp.setStatus(StaplerResponse.SC_NOT_FOUND);
+            return;
+        }
+        new Graph(last.getTimestamp(), 500, 200) {
+            @Override
+            protected JFreeChart createGraph() {
+                DataSetBuilder<String, ChartUtil.NumberOnlyBuildLabel> data = new DataSetBuilder<>();
+                for (Run<?, ?> r : job.getBuilds().limit(TREND_BUILDS)) {
+                    TimingAction timing = r.getAction(TimingAction.class);
+                    if (timing == null || r.isBuilding()) continue;
+                    ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel(r);
+                    timing.getPhases().forEach((phase, millis) -> data.add(millis / 1000.0, phase, label));
+                }
+                return ChartFactory.createStackedAreaChart(
+                        null, null, "seconds", data.build(), PlotOrientation.VERTICAL, true, true, false
+                );
+            }
+        }.doPng(req, rsp);
+    }
+
+    /**
+     * Exports the timings of the last completed build in the Prometheus text exposition format
+     */
+    public void doPrometheus(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        final Run<?, ?> build = lastTimedBuild();
+        rsp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        try (PrintWriter w = rsp.getWriter()) {
+            if (build != null) {
+                writeMetrics(w, job.getFullName(), build.getNumber(), build.getAction(TimingAction.class));
+            }
+        }
+    }
+
+    static void writeMetrics(PrintWriter w, String jobName, int buildNumber, TimingAction timing) {
+        final String job = "job=\"" + escape(jobName) + "\"";
+
+        line(w, "# HELP qftest_build_number Number of the build the QF-Test timings stem from");
+        line(w, "# TYPE qftest_build_number gauge");
+        line(w, "qftest_build_number{" + job + "} " + buildNumber);
+
+        line(w, "# HELP qftest_phase_duration_seconds Wall clock duration of a phase of the QF-Test build steps");
+        line(w, "# TYPE qftest_phase_duration_seconds gauge");
+        for (Map.Entry<String, Long> e : timing.getPhases().entrySet()) {
+            line(w, "qftest_phase_duration_seconds{" + job + ",phase=\"" + escape(e.getKey()) + "\"} " + e.getValue() / 1000.0);
+        }
+
+        line(w, "# HELP qftest_launch_duration_seconds Time spent starting QF-Test processes, summed over all calls");
+        line(w, "# TYPE qftest_launch_duration_seconds gauge");
+        line(w, "qftest_launch_duration_seconds{" + job + "} " + timing.getLaunchTotal() / 1000.0);
+
+        line(w, "# HELP qftest_admission_wait_seconds Time QF-Test calls waited for admission, summed over all calls");
+        line(w, "# TYPE qftest_admission_wait_seconds gauge");
+        line(w, "qftest_admission_wait_seconds{" + job + "} " + timing.getAdmissionWait() / 1000.0);
+
+        line(w, "# HELP qftest_calls Number of QF-Test calls");
+        line(w, "# TYPE qftest_calls gauge");
+        line(w, "qftest_calls{" + job + "} " + timing.getCalls());
+
+        line(w, "# HELP qftest_suite_duration_seconds Duration of a suite");
+        line(w, "# TYPE qftest_suite_duration_seconds gauge");
+        for (Map.Entry<String, Long> e : timing.getSuites().entrySet()) {
+            line(w, "qftest_suite_duration_seconds{" + job + ",suite=\"" + escape(e.getKey()) + "\"} " + e.getValue() / 1000.0);
+        }
+    }
+
+    /** The exposition format requires '\n' line endings on every platform */
+    private static void line(PrintWriter w, String line) {
+        w.write(line);
+        w.write('\n');
+    }
+
+    static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @CheckForNull
+    private Run<?, ?> lastTimedBuild() {
+        for (Run<?, ?> r : job.getBuilds().limit(TREND_BUILDS)) {
+            if (!r.isBuilding() && r.getAction(TimingAction.class) != null) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the trend to jobs whose last completed build has been timed.
+     *
+     * Actions are created for every job whenever it is rendered, so whether a job has been timed is only looked up
+     * once per job and cached. The cache is updated when a build is timed, see {@link TimingAction#getOrCreate}.
+     */
+    @Extension
+    @SuppressWarnings("rawtypes")
+    public static class Factory extends TransientActionFactory<Job> {
+
+        @Override
+        public Class<Job> type() {
+            return Job.class;
+        }
+
+        private static final Map<Job<?, ?>, Boolean> timedJobs = Collections.synchronizedMap(new WeakHashMap<>());
+
+        static void timed(Job<?, ?> job) {
+            timedJobs.put(job, Boolean.TRUE);
+        }
+
+        @Nonnull
+        @Override
+        public Collection<? extends Action> createFor(@Nonnull Job target) {
+            Boolean timed = timedJobs.get(target);
+            if (timed == null) {
+                //looked up outside the lock, loading the build may take a while
+                Run<?, ?> last = target.getLastCompletedBuild();
+                timed = (last != null && last.getAction(TimingAction.class) != null);
+                timedJobs.putIfAbsent(target, timed);
+            }
+            if (!timed) {
+                return Collections.emptyList();
+            }
+            return Collections.singleton(new TimingTrendAction(target));
+        }
+    }
+}
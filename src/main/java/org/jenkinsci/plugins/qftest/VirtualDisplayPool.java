@@ -0,0 +1,193 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.util.NullStream;
+import jenkins.security.MasterToSlaveCallable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of virtual X displays (Xvfb) on a Linux node, so that GUI suites can run in parallel without sharing a display.
+ *
+ * A QF-Test call leases a display for its whole duration; displays are started on demand, reused by later calls of
+ * the same build step, and stopped by {@link #close()}. At most one display per parallel call is ever started.
+ */
+class VirtualDisplayPool implements AutoCloseable {
+
+    static final long STARTUP_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    /** First display number tried, well above the ones of desktop sessions and ssh forwarding */
+    static final int FIRST_DISPLAY = 90;
+
+    /** A running Xvfb */
+    static class Display {
+        final int number;
+        private final Proc proc;
+
+        Display(int number, Proc proc) {
+            this.number = number;
+            this.proc = proc;
+        }
+
+        /**
+         * @return a copy of the environment with DISPLAY set to this display
+         */
+        EnvVars environment(EnvVars env) {
+            EnvVars ret = new EnvVars(env);
+            ret.put("DISPLAY", ":" + number);
+            return ret;
+        }
+
+        @Override
+        public String toString() {
+            return ":" + number;
+        }
+    }
+
+    private final Launcher launcher;
+    private final FilePath pwd;
+    private final EnvVars env;
+    private final String screen;
+
+    private final Deque<Display> idle = new ArrayDeque<>();
+    private final List<Display> all = new ArrayList<>();
+    private final Set<Integer> reserved = new HashSet<>();
+
+    /**
+     * @param screen geometry and depth of the screen, e.g. <tt>1920x1080x24</tt>
+     */
+    VirtualDisplayPool(Launcher launcher, FilePath pwd, EnvVars env, String screen) {
+        this.launcher = launcher;
+        this.pwd = pwd;
+        this.env = env;
+        this.screen = screen;
+    }
+
+    /**
+     * @return an idle display, or a newly started one
+     */
+    Display acquire() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (!idle.isEmpty()) {
+                return idle.pollFirst();
+            }
+        }
+        //another build on the node may grab the same number in between, so try a few
+        IOException failure = null;
+        for (int attempt = 0; attempt < 5; attempt++) {
+            final int number = reserve();
+            try {
+                Display d = start(number);
+                synchronized (this) {
+                    all.add(d);
+                }
+                return d;
+            } catch (IOException ex) {
+                failure = ex;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * @param healthy false, if the display may be in a bad state (e.g. the call was killed) and should not be reused
+     */
+    void release(Display display, boolean healthy) throws IOException, InterruptedException {
+        if (healthy && display.proc.isAlive()) {
+            synchronized (this) {
+                idle.addFirst(display);
+            }
+        } else {
+            synchronized (this) {
+                all.remove(display);
+            }
+            display.proc.kill();
+        }
+    }
+
+    /**
+     * Stops all displays started by this pool
+     */
+    @Override
+    public void close() throws IOException, InterruptedException {
+        final List<Display> displays;
+        synchronized (this) {
+            displays = new ArrayList<>(all);
+            all.clear();
+            idle.clear();
+        }
+        for (Display d : displays) {
+            d.proc.kill();
+        }
+    }
+
+    private int reserve() throws IOException, InterruptedException {
+        final Set<Integer> taken;
+        synchronized (this) {
+            taken = new HashSet<>(reserved);
+        }
+        final int number = launcher.getChannel().call(new FreeDisplay(FIRST_DISPLAY, taken));
+        synchronized (this) {
+            reserved.add(number);
+        }
+        return number;
+    }
+
+    private Display start(int number) throws IOException, InterruptedException {
+        final Proc proc = launcher.new ProcStarter()
+                .cmds("Xvfb", ":" + number, "-screen", "0", screen, "-nolisten", "tcp")
+                .stdout(new NullStream())
+                .pwd(pwd)
+                .envs(env)
+                .quiet(true)
+                .start();
+
+        final FilePath socket = new FilePath(launcher.getChannel(), "/tmp/.X11-unix/X" + number);
+        final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        while (!socket.exists()) {
+            if (!proc.isAlive()) {
+                throw new IOException("Xvfb for display :" + number + " exited during startup with return value " + proc.join());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                proc.kill();
+                throw new IOException("Xvfb did not create display :" + number + " in time");
+            }
+            Thread.sleep(200);
+        }
+        return new Display(number, proc);
+    }
+
+    /** Finds the lowest display number on the node that is neither locked by an X server nor already taken */
+    static class FreeDisplay extends MasterToSlaveCallable<Integer, IOException> {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final HashSet<Integer> taken;
+
+        FreeDisplay(int first, Set<Integer> taken) {
+            this.first = first;
+            this.taken = new HashSet<>(taken);
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            for (int n = first; n < first + 1000; n++) {
+                if (!taken.contains(n) && !new File("/tmp/.X" + n + "-lock").exists() && !new File("/tmp/.X11-unix/X" + n).exists()) {
+                    return n;
+                }
+            }
+            throw new IOException("No free X display number found above :" + first);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class AdmissionControlTest {
+
+    @Test
+    public void capacity() {
+        Assertions.assertEquals(0, new AdmissionControl.Limits(0, 0, 5).capacity(16000));
+        Assertions.assertEquals(4, new AdmissionControl.Limits(4, 0, 0).capacity(16000));
+        Assertions.assertEquals(8, new AdmissionControl.Limits(0, 2000, 0).capacity(16000));
+        Assertions.assertEquals(4, new AdmissionControl.Limits(4, 2000, 0).capacity(16000));
+        Assertions.assertEquals(1, new AdmissionControl.Limits(0, 2000, 0).capacity(1000), "At least one process");
+        Assertions.assertEquals(4, new AdmissionControl.Limits(4, 2000, 0).capacity(-1), "Unknown memory");
+    }
+
+    @Test
+    public void queuesPerAgent() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        AdmissionControl.Ticket first = admission.admit("agent1", 1, 0);
+        admission.admit("agent2", 1, 0);
+
+        CompletableFuture<AdmissionControl.Ticket> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.admit("agent1", 1, 0);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Assertions.assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+
+        first.close();
+        first.close();
+        Assertions.assertTrue(second.get(5, TimeUnit.SECONDS).getWaited() > 0);
+        Assertions.assertEquals(1, admission.getRunning("agent1"));
+    }
+
+    @Test
+    public void licenseSeats() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        AdmissionControl.Ticket first = admission.admit("agent1", 0, 2);
+        admission.admit("agent2", 0, 2);
+
+        CompletableFuture<AdmissionControl.Ticket> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.admit("agent3", 0, 2);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Assertions.assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+
+        first.close();
+        third.get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(2, admission.getLicensesUsed());
+    }
+
+    @Test
+    public void cancelWhileWaiting() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.admit("agent1", 1, 0);
+
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        CompletableFuture<AdmissionControl.Ticket> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return admission.admit("agent1", 1, 0, cancelled::get);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        Assertions.assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+
+        cancelled.set(true);
+        ExecutionException ex = Assertions.assertThrows(ExecutionException.class,
+                () -> second.get(AdmissionControl.CANCEL_CHECK_INTERVAL * 3, TimeUnit.MILLISECONDS));
+        Assertions.assertTrue(ex.getCause() instanceof CancellationException);
+        Assertions.assertEquals(1, admission.getRunning("agent1"));
+    }
+}
@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class CheckpointTest {
+
+    private static final Suites A = new Suites("a.qft", "");
+    private static final Suites B = new Suites("b.qft", "-variable x=1");
+    private static final Suites B2 = new Suites("b.qft", "-variable x=2");
+
+    private static final String FINGERPRINT = Checkpoint.fingerprint(Arrays.asList(A, B));
+
+    @Test
+    public void roundTrip() throws Exception {
+        FilePath logdir = new FilePath(Files.createTempDirectory("qftest-checkpoint").toFile());
+        Assertions.assertNull(Checkpoint.resume(logdir, 7, -1), "No checkpoint yet");
+
+        Checkpoint checkpoint = Checkpoint.create(logdir, 7, FINGERPRINT);
+        checkpoint.record(new Checkpoint.Call("0000", Arrays.asList("0000", "0000-retry1"), Collections.singletonList("a.qft"), 1),
+                Collections.singletonList(A));
+        checkpoint.record(new Checkpoint.Call("0002", Collections.singletonList("0002"), Collections.singletonList("b.qft"), 3),
+                Collections.singletonList(B));
+
+        Checkpoint resumed = Checkpoint.resume(logdir, 7, -1);
+        Assertions.assertNotNull(resumed);
+        Assertions.assertTrue(resumed.isFor(Checkpoint.fingerprint(Arrays.asList(B, A))));
+        Assertions.assertFalse(resumed.isFor(Checkpoint.fingerprint(Arrays.asList(A, B2))));
+        Assertions.assertTrue(resumed.isCompleted(A));
+        Assertions.assertTrue(resumed.isCompleted(B));
+        Assertions.assertFalse(resumed.isCompleted(B2), "Custom parameters are part of the suite configuration");
+        Assertions.assertEquals(3, resumed.nextRunIndex());
+
+        List<Checkpoint.Call> calls = resumed.getCalls(Arrays.asList(B, A, B2));
+        Assertions.assertEquals(2, calls.size());
+        Assertions.assertEquals("0000", calls.get(0).runId);
+        Assertions.assertEquals(Arrays.asList("0000", "0000-retry1"), calls.get(0).attemptIds);
+        Assertions.assertEquals(1, calls.get(0).returnValue);
+        Assertions.assertEquals(3, calls.get(1).returnValue);
+
+        resumed.finish();
+        Assertions.assertNull(Checkpoint.resume(logdir, 7, -1), "A step run to its end is not resumed");
+    }
+
+    @Test
+    public void otherBuild() throws Exception {
+        FilePath logdir = new FilePath(Files.createTempDirectory("qftest-checkpoint").toFile());
+        Checkpoint.create(logdir, 7, FINGERPRINT).record(
+                new Checkpoint.Call("0000", Collections.singletonList("0000"), Collections.singletonList("a.qft"), 0),
+                Collections.singletonList(A));
+        Assertions.assertNotNull(Checkpoint.resume(logdir, 7, 6));
+        Assertions.assertNull(Checkpoint.resume(logdir, 8, -1), "The previous build has succeeded or is still running");
+        Assertions.assertNull(Checkpoint.resume(logdir, 9, 8), "Written by an earlier build than the previous one");
+    }
+
+    @Test
+    public void failedBuild() throws Exception {
+        FilePath logdir = new FilePath(Files.createTempDirectory("qftest-checkpoint").toFile());
+        Checkpoint.create(logdir, 7, FINGERPRINT).record(
+                new Checkpoint.Call("0000", Collections.singletonList("0000"), Collections.singletonList("a.qft"), 0),
+                Collections.singletonList(A));
+
+        Checkpoint resumed = Checkpoint.resume(logdir, 8, 7);
+        Assertions.assertNotNull(resumed, "The failed previous build is resumed");
+        Assertions.assertTrue(resumed.isFor(FINGERPRINT));
+        Assertions.assertTrue(resumed.isCompleted(A));
+        resumed.record(new Checkpoint.Call("0001", Collections.singletonList("0001"), Collections.singletonList("b.qft"), 0),
+                Collections.singletonList(B));
+
+        Assertions.assertNull(Checkpoint.resume(logdir, 9, 7), "Taken over by the resuming build");
+        resumed = Checkpoint.resume(logdir, 9, 8);
+        Assertions.assertNotNull(resumed, "Resumed again if the resuming build fails, too");
+        Assertions.assertTrue(resumed.isCompleted(B));
+
+        resumed.finish();
+        Assertions.assertNull(Checkpoint.resume(logdir, 10, 9), "A step run to its end is not resumed by the next build");
+    }
+
+    @Test
+    public void truncatedLine() throws Exception {
+        FilePath logdir = new FilePath(Files.createTempDirectory("qftest-checkpoint").toFile());
+        Checkpoint.create(logdir, 7, FINGERPRINT).record(
+                new Checkpoint.Call("0000", Collections.singletonList("0000"), Collections.singletonList("a.qft"), 0),
+                Collections.singletonList(A));
+        FilePath file = logdir.child(Checkpoint.FILENAME);
+        file.write(file.readToString() + "3\t0001\t0001\tb.qft\t-variable x", "UTF-8");
+
+        Checkpoint resumed = Checkpoint.resume(logdir, 7, -1);
+        Assertions.assertTrue(resumed.isCompleted(A));
+        Assertions.assertFalse(resumed.isCompleted(B), "Interrupted while appending");
+    }
+
+    @Test
+    public void discardIncomplete() throws Exception {
+        File dir = Files.createTempDirectory("qftest-checkpoint").toFile();
+        FilePath logdir = new FilePath(dir);
+        FilePath qrzdir = logdir.child("qrz");
+        FilePath htmldir = logdir.child("html");
+        FilePath junitdir = logdir.child("junit");
+        for (String id : Arrays.asList("0000", "0001")) {
+            qrzdir.child(id).mkdirs();
+            htmldir.child(id).mkdirs();
+            junitdir.child(id).mkdirs();
+        }
+        htmldir.child("index.html").write("", "UTF-8");
+
+        Checkpoint checkpoint = Checkpoint.create(logdir, 7, FINGERPRINT);
+        checkpoint.record(new Checkpoint.Call("0000", Collections.singletonList("0000"), Collections.singletonList("a.qft"), 0),
+                Collections.singletonList(A));
+
+        Checkpoint.resume(logdir, 7, -1).discardIncomplete(qrzdir, htmldir, junitdir, true);
+        Assertions.assertTrue(qrzdir.child("0000").exists());
+        Assertions.assertFalse(qrzdir.child("0001").exists(), "Run logs of an interrupted call");
+        Assertions.assertTrue(htmldir.child("0000").exists());
+        Assertions.assertFalse(htmldir.child("0001").exists());
+        Assertions.assertFalse(htmldir.child("index.html").exists());
+
+        Checkpoint.resume(logdir, 7, -1).discardIncomplete(qrzdir, htmldir, junitdir, false);
+        Assertions.assertTrue(qrzdir.child("0000").exists());
+        Assertions.assertEquals(0, htmldir.list().size(), "The report over all run logs is created anew");
+    }
+}
@@ -0,0 +1,67 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class JUnitResultParserTest {
+
+    private static final String REPORT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<testsuites>\n"
+            + "  <testsuite name=\"suites/a.qft\" tests=\"3\">\n"
+            + "    <testcase name=\"login\" time=\"1.5\"/>\n"
+            + "    <testcase name=\"order\" time=\"0.25\"><failure message=\"expected\tvalue\">details</failure></testcase>\n"
+            + "    <testcase name=\"logout\"><skipped/></testcase>\n"
+            + "  </testsuite>\n"
+            + "  <testsuite name=\"suites/b.qft\">\n"
+            + "    <testcase name=\"crash\"><failure message=\"f\"/><error message=\"e\"/></testcase>\n"
+            + "  </testsuite>\n"
+            + "</testsuites>\n";
+
+    @Test
+    public void totalsAndCases() throws Exception {
+        StringWriter cases = new StringWriter();
+        JUnitResultParser parser = new JUnitResultParser(cases);
+        parser.parse(new ByteArrayInputStream(REPORT.getBytes(StandardCharsets.UTF_8)));
+
+        List<QFTestResultAction.SuiteResult> suites = parser.getSuites();
+        Assertions.assertEquals(2, suites.size());
+
+        QFTestResultAction.SuiteResult a = suites.get(0);
+        Assertions.assertEquals("suites/a.qft", a.getName());
+        Assertions.assertEquals(1, a.getPassed());
+        Assertions.assertEquals(1, a.getFailed());
+        Assertions.assertEquals(1, a.getSkipped());
+        Assertions.assertEquals(1750, a.getDuration());
+
+        Assertions.assertEquals(1, suites.get(1).getErrors(), "An error must beat a failure");
+
+        String[] lines = cases.toString().split("\n");
+        Assertions.assertEquals(4, lines.length);
+        QFTestResultAction.CaseResult order = QFTestResultAction.CaseResult.parse(lines[1]);
+        Assertions.assertNotNull(order);
+        Assertions.assertEquals(QFTestResultAction.Status.FAILED, order.getStatus());
+        Assertions.assertEquals("expected value", order.getMessage(), "Tabs must not break the case file");
+    }
+
+    @Test
+    public void nestedSuites() throws Exception {
+        StringWriter cases = new StringWriter();
+        JUnitResultParser parser = new JUnitResultParser(cases);
+        parser.parse(new ByteArrayInputStream(("<testsuite name=\"outer.qft\">\n"
+                + "  <testcase name=\"before\"/>\n"
+                + "  <testsuite name=\"inner.qft\"><testcase name=\"nested\"/></testsuite>\n"
+                + "  <testcase name=\"after\"/>\n"
+                + "</testsuite>\n").getBytes(StandardCharsets.UTF_8)));
+
+        String[] lines = cases.toString().split("\n");
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertEquals("inner.qft", QFTestResultAction.CaseResult.parse(lines[1]).getSuite());
+        Assertions.assertEquals("outer.qft", QFTestResultAction.CaseResult.parse(lines[2]).getSuite(),
+                "The outer suite continues after a nested one");
+    }
+}
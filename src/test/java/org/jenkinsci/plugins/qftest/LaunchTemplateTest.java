@@ -0,0 +1,47 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+class LaunchTemplateTest {
+
+    private final LaunchTemplate template = new LaunchTemplate("qftest");
+
+    @Test
+    public void run() {
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-run", "-batch", "-nomessagewindow", "-runlogdir", "logs/0001", "-variable", "a=b", "a.qft", "b.qft"),
+                template.run("logs/0001", null, "-variable a=b -runlogdir mine", Arrays.asList("a.qft", "b.qft"))
+        );
+    }
+
+    @Test
+    public void callDaemon() {
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-calldaemon", "-batch", "-daemonhost", "localhost", "-nomessagewindow",
+                        "-daemonport", "3543", "-runlogdir", "logs/0002", "a.qft"),
+                template.run("logs/0002", 3543, "-run", Collections.singletonList("a.qft"))
+        );
+    }
+
+    @Test
+    public void genReport() {
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-genreport", "-batch", "-runlogdir", "logs", "-report.html", "html", "a.qrz"),
+                template.genReport("logs", Arrays.asList("-report.html", "html"), Collections.singletonList("a.qrz"))
+        );
+    }
+
+    @Test
+    public void launchesAreIndependent() {
+        template.run("logs/0001", 3543, "-variable a=b", Collections.singletonList("a.qft"));
+
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-run", "-batch", "-nomessagewindow", "-runlogdir", "logs/0003", "c.qft"),
+                template.run("logs/0003", null, "", Collections.singletonList("c.qft"))
+        );
+    }
+}
@@ -0,0 +1,89 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class PresetRulesTest {
+
+    private static final PresetRules TEMPLATE = PresetRules.EMPTY
+            .with(Arrays.asList("qftest"))
+            .with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-batch")
+            .with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-run")
+            .with(ExtendedArgumentListBuilder.PresetType.DROP, "-report", "")
+            .with(ExtendedArgumentListBuilder.PresetType.OVERWRITE, "-runlogdir", "logs")
+            .with(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-logdir", "logHERE");
+
+    @Test
+    public void resolve() {
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-batch", "-run", "-logdir", "logHERE", "-runlogdir", "logs", "a.qft"),
+                TEMPLATE.resolve(Arrays.asList("-run", "-report", "rep", "-runlogdir", "mine", "a.qft"))
+        );
+    }
+
+    @Test
+    public void overrideDefault() {
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-batch", "-run", "a.qft", "-logdir", "second"),
+                TEMPLATE.resolve(Arrays.asList("-logdir", "first", "a.qft", "-logdir", "second")),
+                "The last value given for a default wins"
+        );
+    }
+
+    @Test
+    public void templateIsNotModified() {
+        TEMPLATE.resolve(Arrays.asList("-logdir", "other", "a.qft"));
+        TEMPLATE.with(ExtendedArgumentListBuilder.PresetType.DROP, "-batch");
+
+        Assertions.assertEquals("qftest -batch -run -logdir logHERE", TEMPLATE.toString());
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-batch", "-run", "-logdir", "logHERE", "b.qft"),
+                TEMPLATE.resolve(Arrays.asList("-batch", "b.qft"))
+        );
+    }
+
+    @Test
+    public void skipDoesNotLeakIntoNextLaunch() {
+        TEMPLATE.resolve(Arrays.asList("a.qft", "-report"));
+
+        Assertions.assertEquals(
+                Arrays.asList("qftest", "-batch", "-run", "-logdir", "logHERE", "b.qft"),
+                TEMPLATE.resolve(Arrays.asList("b.qft"))
+        );
+    }
+
+    @Test
+    public void sameAsBuilder() {
+        QFTestCommandLineBuilder builder = new QFTestCommandLineBuilder("qftest", QFTestCommandLineBuilder.RunMode.RUN);
+        builder.presetArg(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-batch")
+                .presetArg(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-logdir", "logHERE")
+                .presetArg(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-variable", "x=1");
+        builder.addSuiteConfig("-variable x=2 -logdir logTHERE -gendoc", Arrays.asList("a.qft", "b.qft"));
+
+        PresetRules template = PresetRules.EMPTY.with(Arrays.asList("qftest"));
+        for (QFTestCommandLineBuilder.RunMode mode : QFTestCommandLineBuilder.RunMode.values()) {
+            template = template.with(mode == QFTestCommandLineBuilder.RunMode.RUN
+                    ? ExtendedArgumentListBuilder.PresetType.ENFORCE : ExtendedArgumentListBuilder.PresetType.DROP, mode.toString());
+        }
+        template = template.with(ExtendedArgumentListBuilder.PresetType.ENFORCE, "-batch")
+                .with(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-logdir", "logHERE")
+                .with(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-variable", "x=1");
+
+        Assertions.assertEquals(builder.toList(), template.resolve("-variable x=2 -logdir logTHERE -gendoc", Arrays.asList("a.qft", "b.qft")));
+    }
+
+    @Test
+    public void manyTokens() {
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            tokens.add("-logdir");
+            tokens.add("dir" + i);
+        }
+
+        Assertions.assertEquals(Arrays.asList("qftest", "-batch", "-run", "-logdir", "dir99999"), TEMPLATE.resolve(tokens));
+    }
+}
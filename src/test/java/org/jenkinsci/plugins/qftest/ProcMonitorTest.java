@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.Proc;
+import hudson.util.NullStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+class ProcMonitorTest {
+
+    /** Exits with the given return value after the given time, or with 143 once killed */
+    private static class FakeProc extends Proc {
+        private final long end;
+        private final int ret;
+        private volatile boolean killed = false;
+
+        FakeProc(long duration, int ret) {
+            this.end = System.currentTimeMillis() + duration;
+            this.ret = ret;
+        }
+
+        @Override
+        public boolean isAlive() {
+            return !killed && System.currentTimeMillis() < end;
+        }
+
+        @Override
+        public void kill() {
+            killed = true;
+        }
+
+        @Override
+        public int join() {
+            return killed ? 143 : ret;
+        }
+
+        @Override
+        public InputStream getStdout() {
+            return null;
+        }
+
+        @Override
+        public InputStream getStderr() {
+            return null;
+        }
+
+        @Override
+        public OutputStream getStdin() {
+            return null;
+        }
+    }
+
+    private static ProcWatchdog.ActivityOutputStream stdout() {
+        return new ProcWatchdog.ActivityOutputStream(new NullStream());
+    }
+
+    @Test
+    public void completesWithReturnValue() throws Exception {
+        ProcMonitor.Watch watch = ProcMonitor.get().watch(new FakeProc(500, 3), new ProcWatchdog(0, 0, 0), stdout(), null);
+        Assertions.assertFalse(watch.getResult().isDone());
+        Assertions.assertEquals(3, watch.getResult().get(10, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    public void killedByWatchdog() throws Exception {
+        ProcWatchdog watchdog = new ProcWatchdog(500, 0, 0);
+        FakeProc proc = new FakeProc(TimeUnit.MINUTES.toMillis(5), 0);
+        ProcMonitor.Watch watch = ProcMonitor.get().watch(proc, watchdog, stdout(), null);
+        Assertions.assertEquals(ProcWatchdog.RET_TIMEOUT, watch.getResult().get(10, TimeUnit.SECONDS).intValue());
+        Assertions.assertEquals(ProcWatchdog.Timeout.SUITE, watchdog.getTimeout());
+        Assertions.assertFalse(proc.isAlive());
+    }
+
+    @Test
+    public void kill() throws Exception {
+        ProcWatchdog watchdog = new ProcWatchdog(0, 0, 0);
+        ProcMonitor.Watch watch = ProcMonitor.get().watch(new FakeProc(TimeUnit.MINUTES.toMillis(5), 0), watchdog, stdout(), null);
+        watch.kill();
+        Assertions.assertEquals(143, watch.getResult().get(10, TimeUnit.SECONDS).intValue());
+        Assertions.assertNull(watchdog.getTimeout());
+    }
+}
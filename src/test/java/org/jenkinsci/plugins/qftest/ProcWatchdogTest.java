@@ -0,0 +1,33 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+class ProcWatchdogTest {
+
+    @Test
+    public void lastModifiedInSubdirectories() throws Exception {
+        File dir = Files.createTempDirectory("qftest-runlogs").toFile();
+        File nested = new File(dir, "0000/split");
+        Assertions.assertTrue(nested.mkdirs());
+        File runlog = new File(nested, "part1.qrz");
+        Assertions.assertTrue(runlog.createNewFile());
+
+        long old = System.currentTimeMillis() - 3600_000;
+        for (File f : new File[]{dir, new File(dir, "0000"), nested}) {
+            Assertions.assertTrue(f.setLastModified(old));
+        }
+        long now = old + 1800_000;
+        Assertions.assertTrue(runlog.setLastModified(now));
+
+        Assertions.assertEquals(now, (long) new ProcWatchdog.LastModified().invoke(dir, null),
+                "Progress in a run log below a subdirectory is not noticed");
+        Assertions.assertEquals(old, (long) new ProcWatchdog.LastModified(1, 100).invoke(dir, null),
+                "Only descends to the given depth");
+        Assertions.assertEquals(old, (long) new ProcWatchdog.LastModified(8, 3).invoke(dir, null),
+                "Only checks the given number of files");
+    }
+}
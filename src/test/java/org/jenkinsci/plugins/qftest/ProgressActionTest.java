@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class ProgressActionTest {
+
+    @Test
+    public void countsTestCaseResults() {
+        ProgressAction progress = new ProgressAction(2, 1, 0);
+        progress.line("Test case: Login (passed)");
+        progress.line("testcase Order: FAILED");
+        progress.line("Test-case Checkout: exception");
+        progress.line("Test case: Error handling");
+        progress.line("Starting test case Login");
+        progress.line("Some other output: passed");
+
+        Assertions.assertEquals(1, progress.getPassed());
+        Assertions.assertEquals(1, progress.getFailed());
+        Assertions.assertEquals(1, progress.getErrors());
+    }
+
+    @Test
+    public void ignoresStatesInTestCaseNames() {
+        ProgressAction progress = new ProgressAction(1, 1, 0);
+        progress.line("Test case: Parse error");
+        progress.line("Test case: Login ok");
+        progress.line("Test case: Error");
+        Assertions.assertFalse(progress.isTestCasesSeen(), "Counters are hidden without reported test cases");
+
+        progress.line("Test case: Parse error (ok)");
+        Assertions.assertEquals(1, progress.getPassed());
+        Assertions.assertEquals(0, progress.getErrors());
+        Assertions.assertTrue(progress.isTestCasesSeen());
+    }
+
+    @Test
+    public void estimatesRemainingTime() {
+        ProgressAction progress = new ProgressAction(4, 2, 0);
+        Assertions.assertEquals(-1, progress.getEtaMillis(System.currentTimeMillis()), "Nothing known yet");
+
+        long now = System.currentTimeMillis();
+        progress.suitesDone(1);
+        long eta = progress.getEtaMillis(now + 1000);
+        Assertions.assertTrue(eta >= 3000 && eta < 3100, "Three more suites at the rate of the first one");
+
+        progress.suitesDone(3);
+        Assertions.assertEquals(0, progress.getEtaMillis(now + 2000));
+    }
+}
@@ -72,5 +72,19 @@ class CommandLineTests {
         Assertions.assertEquals(binary + " -run -batch -logdir logTHERE aSuite.qft",
                 builder.toString(), "Default does not work as intended");
     }
+
+    @Test
+    public void masked() {
+        builder.presetArg(ExtendedArgumentListBuilder.PresetType.DEFAULT, "-logdir", "logHERE")
+                .add("-variable")
+                .addMasked("password=secret")
+                .addTokenized("-logdir logTHERE aSuite.qft");
+
+        Assertions.assertEquals(binary + " -run -variable ****** -logdir logTHERE aSuite.qft",
+                builder.toString(), "Masked argument is shown");
+        Assertions.assertArrayEquals(new boolean[]{false, false, false, true, false, false, false}, builder.toMaskArray(),
+                "Mask does not follow the arguments");
+        Assertions.assertTrue(builder.hasMaskedArguments());
+    }
 };
 
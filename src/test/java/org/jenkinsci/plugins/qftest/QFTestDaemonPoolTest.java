@@ -0,0 +1,118 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+class QFTestDaemonPoolTest {
+
+    /** Stands in for a QF-Test daemon by listening on a local port */
+    static class StubDaemon implements QFTestDaemonPool.Daemon {
+        final ServerSocket socket;
+
+        StubDaemon() throws IOException {
+            socket = new ServerSocket(0);
+        }
+
+        @Override
+        public int getPort() {
+            return socket.getLocalPort();
+        }
+
+        @Override
+        public boolean isAlive() throws IOException {
+            return !socket.isClosed();
+        }
+
+        @Override
+        public void stop() throws IOException {
+            socket.close();
+        }
+    }
+
+    List<StubDaemon> launched = new ArrayList<>();
+
+    QFTestDaemonPool.DaemonLauncher stubLauncher = () -> {
+        StubDaemon d = new StubDaemon();
+        launched.add(d);
+        return d;
+    };
+
+    @AfterEach
+    public void stopDaemons() throws IOException {
+        for (StubDaemon d : launched) {
+            d.stop();
+        }
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        QFTestDaemonPool pool = new QFTestDaemonPool();
+
+        QFTestDaemonPool.Lease first = pool.acquire(stubLauncher, 2);
+        Assertions.assertFalse(first.hit, "Empty pool must launch a daemon");
+        pool.release(first, true);
+
+        QFTestDaemonPool.Lease second = pool.acquire(stubLauncher, 2);
+        Assertions.assertTrue(second.hit, "Idle daemon is not reused");
+        Assertions.assertEquals(first.daemon.getPort(), second.daemon.getPort());
+
+        QFTestDaemonPool.Lease third = pool.acquire(stubLauncher, 2);
+        Assertions.assertFalse(third.hit, "Leased daemon must not be shared");
+
+        Assertions.assertEquals(1, pool.getHits());
+        Assertions.assertEquals(2, pool.getMisses());
+        Assertions.assertEquals(2, launched.size());
+    }
+
+    @Test
+    public void discardDeadDaemons() throws Exception {
+        QFTestDaemonPool pool = new QFTestDaemonPool();
+
+        QFTestDaemonPool.Lease first = pool.acquire(stubLauncher, 1);
+        pool.release(first, false);
+        Assertions.assertFalse(first.daemon.isAlive(), "Unusable daemon is not stopped");
+
+        QFTestDaemonPool.Lease second = pool.acquire(stubLauncher, 1);
+        Assertions.assertFalse(second.hit, "Stopped daemon must not be reused");
+    }
+
+    @Test
+    public void reapIdleDaemons() throws Exception {
+        QFTestDaemonPool pool = new QFTestDaemonPool();
+
+        QFTestDaemonPool.Lease lease = pool.acquire(stubLauncher, 1);
+        pool.release(lease, true);
+        Assertions.assertEquals(0, pool.reapIdle(System.currentTimeMillis()));
+        Assertions.assertTrue(lease.daemon.isAlive());
+
+        Assertions.assertEquals(1, pool.reapIdle(System.currentTimeMillis() + QFTestDaemonPool.IDLE_TIMEOUT + 1));
+        Assertions.assertFalse(lease.daemon.isAlive(), "Idle daemon is not stopped");
+        Assertions.assertFalse(pool.acquire(stubLauncher, 1).hit);
+    }
+
+    @Test
+    public void discardUncheckableDaemons() throws Exception {
+        QFTestDaemonPool pool = new QFTestDaemonPool();
+        QFTestDaemonPool.DaemonLauncher unreachable = () -> {
+            StubDaemon d = new StubDaemon() {
+                @Override
+                public boolean isAlive() throws IOException {
+                    throw new IOException("channel closed");
+                }
+            };
+            launched.add(d);
+            return d;
+        };
+
+        pool.release(pool.acquire(unreachable, 1), true);
+        QFTestDaemonPool.Lease second = pool.acquire(stubLauncher, 1);
+        Assertions.assertFalse(second.hit, "Daemon whose state is unknown must not be reused");
+        Assertions.assertTrue(launched.get(0).socket.isClosed(), "Discarded daemon is not stopped");
+    }
+}
@@ -0,0 +1,115 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.FilePath;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+class ResultCacheTest {
+
+    private static FilePath runlogs(String content) throws Exception {
+        FilePath dir = new FilePath(Files.createTempDirectory("qftest-runlogs").toFile());
+        dir.child("suite.qrz").write(content, "UTF-8");
+        return dir;
+    }
+
+    @Test
+    public void key() {
+        String key = ResultCache.key("QF-Test version 7.0.2", "-variable x=1", Arrays.asList("a", "b"));
+        Assertions.assertEquals(key, ResultCache.key("QF-Test version 7.0.2", "-variable x=1", Arrays.asList("a", "b")));
+        Assertions.assertNotEquals(key, ResultCache.key("QF-Test version 7.0.2", "-variable x=2", Arrays.asList("a", "b")));
+        Assertions.assertNotEquals(key, ResultCache.key("QF-Test version 7.0.2", "-variable x=1", Arrays.asList("a", "c")));
+        Assertions.assertNotEquals(key, ResultCache.key("QF-Test version 7.0.3", "-variable x=1", Arrays.asList("a", "b")));
+    }
+
+    @Test
+    public void storeAndReplay() throws Exception {
+        ResultCache cache = new ResultCache(Files.createTempDirectory("qftest-cache").toFile(), 0, 0);
+        Assertions.assertNull(cache.lookup("k1"));
+
+        cache.store("k1", 1, runlogs("run log"));
+        ResultCache.Entry hit = cache.lookup("k1");
+        Assertions.assertNotNull(hit);
+        Assertions.assertEquals(1, hit.returnValue);
+        Assertions.assertEquals("run log", hit.runlogs.child("suite.qrz").readToString());
+    }
+
+    @Test
+    public void expires() throws Exception {
+        ResultCache cache = new ResultCache(Files.createTempDirectory("qftest-cache").toFile(), 200, 0);
+        cache.store("k1", 0, runlogs("run log"));
+        Assertions.assertNotNull(cache.lookup("k1"));
+        Thread.sleep(400);
+        Assertions.assertNull(cache.lookup("k1"), "Expired entry must not be replayed");
+        Assertions.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        File dir = Files.createTempDirectory("qftest-cache").toFile();
+        ResultCache cache = new ResultCache(dir, 0, 25);
+        cache.store("k1", 0, runlogs("0123456789"));
+        cache.store("k2", 0, runlogs("0123456789"));
+        new File(dir, "k1").setLastModified(System.currentTimeMillis() - 60000);
+        new File(dir, "k2").setLastModified(System.currentTimeMillis() - 30000);
+        Assertions.assertNotNull(cache.lookup("k1"), "Used now, so k2 is the least recently used");
+
+        cache.store("k3", 0, runlogs("0123456789"));
+        Assertions.assertNotNull(cache.lookup("k1"));
+        Assertions.assertNull(cache.lookup("k2"));
+        Assertions.assertNotNull(cache.lookup("k3"));
+    }
+
+    @Test
+    public void digestsFollowIncludes() throws Exception {
+        File workspace = Files.createTempDirectory("qftest-workspace").toFile();
+        File cacheFile = new File(Files.createTempDirectory("qftest-tmp").toFile(), SuiteDependencyIndex.CACHE_FILENAME);
+        Files.write(new File(workspace, "a.qft").toPath(),
+                "<TestSuite><include>lib.qft</include></TestSuite>".getBytes("UTF-8"));
+        Files.write(new File(workspace, "b.qft").toPath(), "<TestSuite/>".getBytes("UTF-8"));
+        Files.write(new File(workspace, "lib.qft").toPath(), "<TestSuite/>".getBytes("UTF-8"));
+
+        ResultCache.Digests digests = new ResultCache.Digests(Arrays.asList("a.qft", "b.qft"), null, cacheFile.getPath(),
+                Collections.emptyList());
+        Map<String, String> before = digests.invoke(workspace, null);
+
+        Files.write(new File(workspace, "lib.qft").toPath(), "<TestSuite><!-- changed --></TestSuite>".getBytes("UTF-8"));
+        Map<String, String> after = digests.invoke(workspace, null);
+
+        Assertions.assertNotEquals(before.get("a.qft"), after.get("a.qft"), "Changed include");
+        Assertions.assertEquals(before.get("b.qft"), after.get("b.qft"));
+    }
+
+    @Test
+    public void digestsCoverResources() throws Exception {
+        File workspace = Files.createTempDirectory("qftest-workspace").toFile();
+        File cacheFile = new File(Files.createTempDirectory("qftest-tmp").toFile(), SuiteDependencyIndex.CACHE_FILENAME);
+        new File(workspace, "tests/data").mkdirs();
+        new File(workspace, "other").mkdirs();
+        new File(workspace, "reports").mkdirs();
+        Files.write(new File(workspace, "tests/a.qft").toPath(), "<TestSuite/>".getBytes("UTF-8"));
+        Files.write(new File(workspace, "b.qft").toPath(), "<TestSuite/>".getBytes("UTF-8"));
+        Files.write(new File(workspace, "tests/data/users.csv").toPath(), "alice".getBytes("UTF-8"));
+        Files.write(new File(workspace, "other/notes.txt").toPath(), "x".getBytes("UTF-8"));
+
+        ResultCache.Digests digests = new ResultCache.Digests(Arrays.asList("tests/a.qft", "b.qft"), null, cacheFile.getPath(),
+                Collections.singletonList("reports"));
+        Map<String, String> before = digests.invoke(workspace, null);
+
+        Files.write(new File(workspace, "reports/report.txt").toPath(), "changes every run".getBytes("UTF-8"));
+        Assertions.assertEquals(before, digests.invoke(workspace, null), "The report directory is no input");
+
+        Files.write(new File(workspace, "tests/data/users.csv").toPath(), "bob".getBytes("UTF-8"));
+        Map<String, String> after = digests.invoke(workspace, null);
+        Assertions.assertNotEquals(before.get("tests/a.qft"), after.get("tests/a.qft"), "Changed test data");
+        Assertions.assertNotEquals(before.get("b.qft"), after.get("b.qft"), "Test data below the directory of the suite");
+
+        Files.write(new File(workspace, "other/notes.txt").toPath(), "y".getBytes("UTF-8"));
+        Assertions.assertEquals(after.get("tests/a.qft"), digests.invoke(workspace, null).get("tests/a.qft"), "Outside the directory of the suite");
+    }
+}
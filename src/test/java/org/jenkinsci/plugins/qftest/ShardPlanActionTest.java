@@ -0,0 +1,61 @@
+package org.jenkinsci.plugins.qftest;
+
+import hudson.model.Result;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+class ShardPlanActionTest {
+
+    @Test
+    public void assignsEverySuite() {
+        List<String> keys = Arrays.asList(
+                ShardPlanAction.key("suites/a.qft", "-variable lang=de"),
+                ShardPlanAction.key("suites/a.qft", "-variable lang=en"),
+                ShardPlanAction.key("suites/b.qft", ""),
+                ShardPlanAction.key("suites/c.qft", "")
+        );
+        ShardPlanAction plan = ShardPlanAction.create(keys, SuiteHistory.empty(), 2);
+
+        Assertions.assertEquals(0, plan.countUnknown(keys), "The same suite with other parameters is a suite of its own");
+        Assertions.assertEquals(0, plan.countMissing(keys));
+        int[] sizes = new int[2];
+        keys.forEach(k -> sizes[plan.shardOf(k)]++);
+        Assertions.assertArrayEquals(new int[]{2, 2}, sizes, "Suites without history are spread evenly");
+        Assertions.assertEquals("suites/a.qft", ShardPlanAction.historyKeyOf(keys.get(1)));
+    }
+
+    @Test
+    public void shardsWithoutSuitesAreNeutral() {
+        ShardPlanAction plan = ShardPlanAction.create(Arrays.asList("a.qft\t", "b.qft\t"), SuiteHistory.empty(), 3);
+        plan.setReturnValue(0, (char) 0, "SUCCESS", "FAILURE");
+        plan.setWithoutSuites(1);
+        plan.setReturnValue(2, (char) 0, "SUCCESS", "FAILURE");
+
+        Assertions.assertEquals(3, plan.getFinishedCount());
+        Assertions.assertEquals(1, plan.countWithoutSuites());
+        Assertions.assertEquals(Character.valueOf((char) 0), plan.getReducedReturnValue());
+        Assertions.assertEquals(Result.SUCCESS, plan.getWorstResult());
+    }
+
+    @Test
+    public void reducesReturnValues() {
+        ShardPlanAction plan = ShardPlanAction.create(Arrays.asList("a.qft\t", "b.qft\t"), SuiteHistory.empty(), 3);
+        Assertions.assertNull(plan.getReducedReturnValue());
+        Assertions.assertNull(plan.getWorstResult());
+        Assertions.assertFalse(plan.hasRunSuites());
+
+        plan.setReturnValue(0, (char) 1, "UNSTABLE", "FAILURE");
+        plan.setReturnValue(1, (char) 0, "SUCCESS", "FAILURE");
+        Assertions.assertEquals(Character.valueOf((char) 1), plan.getReducedReturnValue());
+        Assertions.assertEquals(Result.UNSTABLE, plan.getWorstResult());
+        Assertions.assertEquals(2, plan.getFinishedCount(), "One shard has not finished yet");
+
+        plan.setReturnValue(2, null, "FAILURE", "FAILURE");
+        Assertions.assertEquals(Character.valueOf((char) 1), plan.getReducedReturnValue(), "A shard without return value is not reduced");
+        Assertions.assertEquals(Result.FAILURE, plan.getWorstResult(), "but its result counts");
+        Assertions.assertEquals(3, plan.getFinishedCount());
+    }
+}
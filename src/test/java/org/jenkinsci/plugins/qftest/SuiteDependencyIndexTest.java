@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class SuiteDependencyIndexTest {
+
+    SuiteDependencyIndex index() {
+        Map<String, List<String>> includes = new HashMap<>();
+        includes.put("suites/a.qft", Collections.singletonList("lib/common.qft"));
+        includes.put("lib/common.qft", Collections.singletonList("lib/base.qft"));
+        includes.put("suites/b.qft", Collections.emptyList());
+        return new SuiteDependencyIndex(includes);
+    }
+
+    @Test
+    public void transitiveInclude() {
+        Assertions.assertEquals(Collections.singleton("suites/a.qft"),
+                index().affected(Arrays.asList("suites/a.qft", "suites/b.qft"), Collections.singleton("lib/base.qft")),
+                "Change of an indirectly included suite is not detected");
+    }
+
+    @Test
+    public void resourceFile() {
+        Assertions.assertEquals(Collections.singleton("suites/b.qft"),
+                index().affected(Arrays.asList("suites/b.qft", "other/c.qft"), Collections.singleton("suites/data/input.csv")),
+                "Change of a resource file below the suite directory is not detected");
+    }
+
+    @Test
+    public void unaffected() {
+        Assertions.assertTrue(
+                index().affected(Arrays.asList("suites/a.qft", "suites/b.qft"), Collections.singleton("src/Main.java")).isEmpty(),
+                "Unrelated change must not select any suite");
+    }
+
+    @Test
+    public void rootLevelSuite() {
+        List<String> suites = Arrays.asList("root.qft", "suites/b.qft");
+        Assertions.assertEquals(Collections.singleton("suites/b.qft"),
+                index().affected(suites, Collections.singleton("suites/data/input.csv")),
+                "Resources in the directory of another suite do not belong to a suite in the root");
+        Assertions.assertTrue(index().affected(suites, Collections.singleton("lib/data.csv")).isEmpty(),
+                "Neither do resources in the directory of an included suite");
+        Assertions.assertEquals(Collections.singleton("root.qft"),
+                index().affected(suites, Arrays.asList("lib/data.csv", "data/input.csv")),
+                "Resources outside of the directories of other suites do");
+        Assertions.assertEquals(Collections.singleton("root.qft"),
+                index().affected(suites, Collections.singleton("root.qft")));
+    }
+
+    @Test
+    public void parseIncludes() throws Exception {
+        File suite = File.createTempFile("suite", ".qft");
+        Files.write(suite.toPath(), ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<TestSuite id=\"_0\">\n"
+                + "  <include>lib/common.qft</include>\n"
+                + "  <include>other.qft</include>\n"
+                + "  <TestSet id=\"_1\" name=\"set\"/>\n"
+                + "</TestSuite>\n").getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(Arrays.asList("lib/common.qft", "other.qft"), SuiteDependencyIndex.parseIncludes(suite));
+        Assertions.assertEquals("lib/base.qft", SuiteDependencyIndex.normalize("suites/../lib/./base.qft"));
+    }
+}
@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class SuiteDiscoveryCacheTest {
+
+    private static void touch(File root, String path) throws Exception {
+        File f = new File(root, path);
+        f.getParentFile().mkdirs();
+        Files.write(f.toPath(), "<TestSuite/>".getBytes("UTF-8"));
+    }
+
+    private static List<String> antScan(File root, String includes) {
+        DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(root);
+        ds.setIncludes(new String[]{includes});
+        ds.addDefaultExcludes();
+        ds.scan();
+        List<String> ret = new ArrayList<>();
+        for (String f : ds.getIncludedFiles()) {
+            ret.add(new File(root, f).getPath());
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    private static List<String> cacheScan(File root, String includes, File cacheFile) throws Exception {
+        List<String> ret = new SuiteDiscoveryCache(cacheFile, false).scan(root, includes);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    @Test
+    public void sameAsAnt() throws Exception {
+        File root = Files.createTempDirectory("qftest-discovery").toFile();
+        File cacheFile = new File(Files.createTempDirectory("qftest-tmp").toFile(), "cache.tsv");
+        touch(root, "a.qft");
+        touch(root, "sub/b.qft");
+        touch(root, "sub/C.QFT");
+        touch(root, ".git/hooks/d.qft");
+        touch(root, "sub/.svn/e.qft");
+        touch(root, "other/f.qft");
+        Files.createSymbolicLink(new File(root, "linked").toPath(), new File(root, "other").toPath());
+
+        List<String> expected = antScan(root, "**/*.qft");
+        Assertions.assertTrue(expected.contains(new File(root, "linked/f.qft").getPath()), "Ant follows links to directories");
+        Assertions.assertFalse(expected.contains(new File(root, "sub/C.QFT").getPath()), "Ant matches case sensitively");
+        Assertions.assertEquals(expected, cacheScan(root, "**/*.qft", cacheFile));
+        Assertions.assertEquals(expected, cacheScan(root, "**/*.qft", cacheFile), "Cached scan");
+    }
+
+    @Test
+    public void linkCycle() throws Exception {
+        File root = Files.createTempDirectory("qftest-discovery").toFile();
+        File cacheFile = new File(Files.createTempDirectory("qftest-tmp").toFile(), "cache.tsv");
+        touch(root, "sub/a.qft");
+        Files.createSymbolicLink(new File(root, "sub/loop").toPath(), root.toPath());
+
+        Assertions.assertEquals(Collections.singletonList(new File(root, "sub/a.qft").getPath()), cacheScan(root, "**/*.qft", cacheFile));
+    }
+}
@@ -0,0 +1,84 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class SuiteSchedulerTest {
+
+    @Test
+    public void longestFirst() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("a", 10L);
+        durations.put("b", 30L);
+        durations.put("c", 20L);
+
+        List<String> order = SuiteScheduler.longestFirst(Arrays.asList("a", "b", "c"), durations::get);
+
+        Assertions.assertEquals(Arrays.asList("b", "c", "a"), order, "Suites are not sorted longest first");
+    }
+
+    @Test
+    public void unknownDurationsFirst() {
+        Map<String, Long> durations = new HashMap<>();
+        durations.put("a", 10L);
+        durations.put("c", 20L);
+
+        List<String> order = SuiteScheduler.longestFirst(Arrays.asList("a", "b", "c", "d"),
+                s -> durations.getOrDefault(s, -1L));
+
+        Assertions.assertEquals(Arrays.asList("b", "c", "d", "a"), order, "Unknown suites must be treated as long running");
+    }
+
+    @Test
+    public void historyRoundTrip() throws Exception {
+        File jobDir = Files.createTempDirectory("qftest-history").toFile();
+
+        Map<String, Long> samples = new HashMap<>();
+        samples.put("suites/a.qft", 1000L);
+        SuiteHistory.update(jobDir, samples, 1);
+
+        samples.put("suites/a.qft", 2000L);
+        SuiteHistory.update(jobDir, samples, 2);
+
+        SuiteHistory history = SuiteHistory.load(jobDir);
+        Assertions.assertEquals(SuiteHistory.smooth(1000L, 2000L), history.expectedDuration("suites/a.qft"));
+        Assertions.assertEquals(-1, history.expectedDuration("suites/b.qft"));
+
+        SuiteHistory.update(jobDir, new HashMap<>(), 2 + SuiteHistory.MAX_AGE);
+        Assertions.assertEquals(0, SuiteHistory.load(jobDir).size(), "Outdated suites are not pruned");
+    }
+
+    @Test
+    public void flakyStatistics() throws Exception {
+        File jobDir = Files.createTempDirectory("qftest-history").toFile();
+
+        for (int build = 1; build <= SuiteHistory.MIN_RUNS_FOR_QUARANTINE; build++) {
+            Map<String, Boolean> flaky = new HashMap<>();
+            flaky.put("suites/a.qft", build % 2 == 0);
+            flaky.put("suites/b.qft", false);
+            SuiteHistory.update(jobDir, new HashMap<>(), flaky, build);
+            if (build < SuiteHistory.MIN_RUNS_FOR_QUARANTINE) {
+                Assertions.assertEquals(-1, SuiteHistory.load(jobDir).flakyPercentage("suites/a.qft"), "Too few runs to tell");
+            }
+        }
+
+        SuiteHistory history = SuiteHistory.load(jobDir);
+        Assertions.assertEquals(40, history.flakyPercentage("suites/a.qft"));
+        Assertions.assertEquals(0, history.flakyPercentage("suites/b.qft"));
+        Assertions.assertEquals(-1, history.expectedDuration("suites/a.qft"), "Flaky runs must not invent durations");
+    }
+
+    @Test
+    public void bestAttempt() {
+        Assertions.assertEquals(0, ReducedReturnValue.best(2, 0));
+        Assertions.assertEquals(3, ReducedReturnValue.best(-124, 3));
+        Assertions.assertEquals(1, ReducedReturnValue.best(1, 2));
+    }
+}
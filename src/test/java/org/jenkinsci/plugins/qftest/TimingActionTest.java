@@ -0,0 +1,53 @@
+package org.jenkinsci.plugins.qftest;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+
+class TimingActionTest {
+
+    @Test
+    public void consecutivePhases() {
+        TimingAction timing = new TimingAction();
+        TimingAction.PhaseTimer phases = new TimingAction.PhaseTimer(timing);
+        phases.begin("expansion");
+        phases.begin("execution");
+        phases.end();
+        phases.begin("expansion");
+        phases.end();
+
+        Assertions.assertEquals(Arrays.asList("expansion", "execution"), new ArrayList<>(timing.getPhases().keySet()),
+                "Phases must be kept in the order they started and be added up");
+    }
+
+    @Test
+    public void parallelSteps() {
+        TimingAction timing = new TimingAction();
+        timing.addPhase("execution", 3000);
+        timing.addPhase("execution", 1000);
+
+        Assertions.assertEquals(Long.valueOf(3000), timing.getPhases().get("execution"), "Parallel steps overlap, the longest one counts");
+    }
+
+    @Test
+    public void prometheusFormat() {
+        TimingAction timing = new TimingAction();
+        timing.addPhase("execution", 1500);
+        timing.addSuites(Collections.singletonMap("suites/\"quoted\".qft", 250L));
+        timing.addCall(100);
+
+        StringWriter out = new StringWriter();
+        TimingTrendAction.writeMetrics(new PrintWriter(out), "folder/job", 7, timing);
+        String metrics = out.toString();
+
+        Assertions.assertTrue(metrics.contains("qftest_build_number{job=\"folder/job\"} 7\n"));
+        Assertions.assertTrue(metrics.contains("qftest_phase_duration_seconds{job=\"folder/job\",phase=\"execution\"} 1.5\n"));
+        Assertions.assertTrue(metrics.contains("qftest_suite_duration_seconds{job=\"folder/job\",suite=\"suites/\\\"quoted\\\".qft\"} 0.25\n"));
+        Assertions.assertTrue(metrics.contains("qftest_calls{job=\"folder/job\"} 1\n"));
+    }
+}